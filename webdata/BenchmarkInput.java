@@ -0,0 +1,116 @@
+package webdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.TreeSet;
+
+/**
+ * BenchmarkInput class.
+ * Inputs shared by the benchmark drivers: the distinct tokens of a reviews file, as the Parser tokenizes
+ * them, and indexes built from it into temporary directories.
+ */
+class BenchmarkInput {
+
+    /**
+     * Returns the distinct tokens of the review texts of the given file, in lexicographic order.
+     *
+     * @param inputFile reviews file, possibly gzip compressed.
+     * @return sorted distinct tokens.
+     * @throws IOException
+     */
+    static String[] readTerms(String inputFile) throws IOException {
+        TreeSet<String> terms = new TreeSet<>();
+        ReviewScanner scanner = new ReviewScanner(Parser.openInput(inputFile));
+        try {
+            while (scanner.nextLine()) {
+                if (scanner.isField(ReviewScanner.TEXT)) {
+                    while (scanner.nextToken()) {
+                        terms.add(new String(scanner.tokenBuffer(), scanner.tokenOffset(), scanner.tokenLength(),
+                                StandardCharsets.ISO_8859_1));
+                    }
+                }
+            }
+        } finally {
+            scanner.close();
+        }
+        return terms.toArray(new String[0]);
+    }
+
+    /**
+     * Returns tokens missing from the dictionary, one after every given term in lexicographic order.
+     *
+     * @param terms dictionary terms.
+     */
+    static String[] missingTerms(String[] terms) {
+        String[] missing = new String[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            missing[i] = terms[i] + "~";    // not alphanumeric, so never a token
+        }
+        return missing;
+    }
+
+    /**
+     * Times dictionary lookups of the given tokens, reading no postings.
+     *
+     * @param reader      index reader.
+     * @param tokens      tokens to look up.
+     * @param repetitions number of times all tokens are looked up, the fastest is reported.
+     * @return nanoseconds per lookup.
+     */
+    static double lookupNanos(IndexReader reader, String[] tokens, int repetitions) {
+        long bestNanos = Long.MAX_VALUE, found = 0;
+        for (int r = 0; r < repetitions; r++) {
+            long start = System.nanoTime();
+            for (String token : tokens) {
+                found += reader.getTokenFrequency(token);
+            }
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+        if (found < 0) {
+            System.out.println(found);  // keeps the lookups from being optimized away
+        }
+        return bestNanos / (double) Math.max(tokens.length, 1);
+    }
+
+    /**
+     * Builds an index of the given file into a new temporary directory.
+     *
+     * @param inputFile reviews file.
+     * @param options   index build options.
+     * @return index directory, removed with IndexWriter.removeIndex.
+     * @throws IOException
+     */
+    static String buildIndex(String inputFile, IndexWriterOptions options) throws IOException {
+        String dir = Files.createTempDirectory("benchmark_index").toString();
+        new IndexWriter(options).write(inputFile, dir);
+        return dir;
+    }
+
+    /**
+     * Returns the size of a file of an index, 0 if the index has no such file.
+     *
+     * @param dir  index directory.
+     * @param name file name, starting with '/'.
+     */
+    static long fileSize(String dir, String name) {
+        return new File(dir + name).length();
+    }
+
+    /**
+     * Returns the total size of the files of an index.
+     *
+     * @param dir index directory.
+     */
+    static long indexSize(String dir) {
+        long size = 0;
+        File[] files = new File(dir).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+}
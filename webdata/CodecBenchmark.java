@@ -0,0 +1,67 @@
+package webdata;
+
+import java.io.IOException;
+
+/**
+ * CodecBenchmark class.
+ * Builds an index of the given reviews file with every postings codec, and reports the size of its
+ * postings lists and of the whole index, and the decode throughput of the codec: the time to iterate
+ * every docId and frequency of every postings list, whose encoded bytes are read before timing starts.
+ * Usage: java webdata.CodecBenchmark inputFile [repetitions] [codec ...]
+ * Run one codec per JVM for comparable throughputs, later codecs run with the decode call site already
+ * compiled for the earlier ones.
+ */
+class CodecBenchmark {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final String POSTINGS_LISTS = "/postings_lists";
+
+    public static void main(String[] args) throws IOException {
+        String inputFile = args[0];
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String[] terms = BenchmarkInput.readTerms(inputFile);
+        IndexWriterOptions.Codec[] codecs = IndexWriterOptions.Codec.values();
+        if (args.length > 2) {
+            codecs = new IndexWriterOptions.Codec[args.length - 2];
+            for (int i = 0; i < codecs.length; i++) {
+                codecs[i] = IndexWriterOptions.Codec.valueOf(args[i + 2]);
+            }
+        }
+
+        for (IndexWriterOptions.Codec codec : codecs) {
+            IndexWriterOptions options = new IndexWriterOptions();
+            options.setCodec(codec);
+            String dir = BenchmarkInput.buildIndex(inputFile, options);
+            try {
+                IndexReader reader = new IndexReader(dir, 0);
+                long postings = 0, checksum = 0, bestNanos = Long.MAX_VALUE;
+                for (int r = 0; r < repetitions; r++) {
+                    PostingsIterator[] lists = new PostingsIterator[terms.length];
+                    for (int i = 0; i < terms.length; i++) {
+                        lists[i] = reader.getPostingsIterator(terms[i]);
+                    }
+                    postings = 0;
+                    checksum = 0;
+                    long start = System.nanoTime();
+                    for (PostingsIterator list : lists) {
+                        for (int docId = list.nextDoc(); docId != PostingsIterator.NO_MORE_DOCS;
+                             docId = list.nextDoc()) {
+                            checksum += docId ^ list.freq();
+                            postings++;
+                        }
+                    }
+                    bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+                }
+                System.out.printf("%-6s postings lists %,d bytes (%.2f bytes/posting), index %,d bytes, "
+                                + "decode %.1f M postings/s (checksum %d)%n",
+                        codec, BenchmarkInput.fileSize(dir, POSTINGS_LISTS),
+                        BenchmarkInput.fileSize(dir, POSTINGS_LISTS) / (double) Math.max(postings, 1),
+                        BenchmarkInput.indexSize(dir), postings * 1e3 / bestNanos, checksum);
+            } finally {
+                new IndexWriter().removeIndex(dir);
+            }
+        }
+    }
+}
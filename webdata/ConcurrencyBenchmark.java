@@ -0,0 +1,82 @@
+package webdata;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ConcurrencyBenchmark class.
+ * Measures the throughput of an IndexReader and a ReviewSearch shared by 1 to 64 threads. Every thread
+ * runs the same number of operations, each looking up a random token of the input, iterating its
+ * postings and reading the metadata of its first review, and every 100th running a two token query.
+ * Usage: java webdata.ConcurrencyBenchmark indexDir inputFile [cacheBytes] [opsPerThread]
+ */
+class ConcurrencyBenchmark {
+
+    private static final int[] NUM_THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args) throws Exception {
+        IndexReader reader = args.length > 2 ? new IndexReader(args[0], Long.parseLong(args[2]))
+                : new IndexReader(args[0]);
+        ReviewSearch search = new ReviewSearch(reader);
+        int opsPerThread = args.length > 3 ? Integer.parseInt(args[3]) : 50000;
+        List<String> tokens = Arrays.asList(BenchmarkInput.readTerms(args[1]));
+
+        for (int i = 0; i < 3; i++) {
+            run(reader, search, tokens, 1, opsPerThread);     // warm up
+        }
+        double singleThread = 0;
+        for (int numThreads : NUM_THREADS) {
+            double opsPerSecond = run(reader, search, tokens, numThreads, opsPerThread);
+            if (numThreads == 1) {
+                singleThread = opsPerSecond;
+            }
+            System.out.printf("%2d threads: %,.0f ops/s, %.2fx one thread%n",
+                    numThreads, opsPerSecond, opsPerSecond / singleThread);
+        }
+        System.out.println("available processors " + Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Runs opsPerThread operations on each of the given number of threads.
+     *
+     * @return operations per second of all threads together.
+     */
+    private static double run(IndexReader reader, ReviewSearch search, List<String> tokens, int numThreads,
+                              int opsPerThread) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<Long>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < numThreads; t++) {
+            Random random = new Random(t);
+            futures.add(executor.submit(() -> {
+                long checksum = 0;
+                for (int i = 0; i < opsPerThread; i++) {
+                    String token = tokens.get(random.nextInt(tokens.size()));
+                    PostingsIterator postings = reader.getPostingsIterator(token);
+                    int first = postings.nextDoc();
+                    while (postings.docId() != PostingsIterator.NO_MORE_DOCS) {
+                        checksum += postings.freq();
+                        postings.nextDoc();
+                    }
+                    checksum += reader.getReviewScore(first) + reader.getReviewLength(first);
+                    if (i % 100 == 0) {
+                        String other = tokens.get(random.nextInt(tokens.size()));
+                        checksum += search.productSearch(Collections.enumeration(Arrays.asList(token, other)), 10)
+                                .size();
+                    }
+                }
+                return checksum;
+            }));
+        }
+        executor.shutdown();
+        long checksum = 0;
+        for (Future<Long> future : futures) {
+            checksum += future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum == Long.MIN_VALUE) {
+            System.out.println(checksum);   // keeps the work from being optimized away
+        }
+        return (double) numThreads * opsPerThread * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,105 @@
+package webdata;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ConcurrencyStressTest class.
+ * Checks that an IndexReader and a ReviewSearch shared by 1 to 64 threads return the same results as
+ * a single thread: every thread looks up random tokens of the input, and missing ones, and random
+ * reviews, and runs random queries, comparing each result to the one computed before the threads start.
+ * A small postings cache keeps the cache evicting while the threads read.
+ * Usage: java webdata.ConcurrencyStressTest indexDir inputFile [cacheBytes] [opsPerThread]
+ */
+class ConcurrencyStressTest {
+
+    private static final int[] NUM_THREADS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws Exception {
+        IndexReader reader = new IndexReader(args[0], args.length > 2 ? Long.parseLong(args[2]) : 1 << 16);
+        ReviewSearch search = new ReviewSearch(reader);
+        int opsPerThread = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+        List<String> tokens = new ArrayList<>(Arrays.asList(BenchmarkInput.readTerms(args[1])));
+        tokens.add("notatokenofthereviews");
+        int numReviews = reader.getNumberOfReviews();
+
+        Map<String, String> expectedTokens = new HashMap<>();
+        for (String token : tokens) {
+            expectedTokens.put(token, tokenResult(reader, token));
+        }
+        String[] expectedReviews = new String[numReviews + 2];
+        for (int reviewId = 0; reviewId < expectedReviews.length; reviewId++) {
+            expectedReviews[reviewId] = reviewResult(reader, reviewId);
+        }
+        Map<String, String> expectedQueries = new HashMap<>();
+        for (int i = 0; i + 1 < tokens.size(); i += 97) {
+            List<String> query = tokens.subList(i, i + 2);
+            expectedQueries.put(String.join(" ", query), queryResult(search, query));
+        }
+        List<String> queries = new ArrayList<>(expectedQueries.keySet());
+
+        for (int numThreads : NUM_THREADS) {
+            long start = System.nanoTime();
+            ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                Random random = new Random(t);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < opsPerThread; i++) {
+                        String token = tokens.get(random.nextInt(tokens.size()));
+                        check(tokenResult(reader, token), expectedTokens.get(token), "token " + token);
+                        int reviewId = random.nextInt(expectedReviews.length);
+                        check(reviewResult(reader, reviewId), expectedReviews[reviewId], "review " + reviewId);
+                        if (i % 100 == 0) {
+                            String query = queries.get(random.nextInt(queries.size()));
+                            check(queryResult(search, Arrays.asList(query.split(" "))), expectedQueries.get(query),
+                                    "query " + query);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            executor.shutdown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+            System.out.println(numThreads + " threads ok in " + (System.nanoTime() - start) / 1000000 + " ms");
+        }
+        System.out.println("postings cache hits " + reader.getPostingsCache().getHits()
+                + " misses " + reader.getPostingsCache().getMisses()
+                + " evictions " + reader.getPostingsCache().getEvictions());
+    }
+
+    private static void check(String result, String expected, String what) {
+        if (!result.equals(expected)) {
+            throw new IllegalStateException(what + ": " + result + " instead of " + expected);
+        }
+    }
+
+    private static String tokenResult(IndexReader reader, String token) {
+        StringBuilder result = new StringBuilder();
+        result.append(reader.getTokenFrequency(token)).append(',')
+                .append(reader.getTokenCollectionFrequency(token)).append(':');
+        Enumeration<Integer> postings = reader.getReviewsWithToken(token);
+        while (postings.hasMoreElements()) {
+            result.append(postings.nextElement()).append(',');
+        }
+        PostingsIterator iterator = reader.getPostingsIterator(token);
+        if (iterator.advance(reader.getNumberOfReviews() / 2) != PostingsIterator.NO_MORE_DOCS) {
+            result.append('@').append(iterator.docId()).append('/').append(iterator.freq());
+        }
+        return result.toString();
+    }
+
+    private static String reviewResult(IndexReader reader, int reviewId) {
+        return reader.getProductId(reviewId) + "," + reader.getReviewScore(reviewId) + ","
+                + reader.getReviewHelpfulnessNumerator(reviewId) + ","
+                + reader.getReviewHelpfulnessDenominator(reviewId) + "," + reader.getReviewLength(reviewId);
+    }
+
+    private static String queryResult(ReviewSearch search, List<String> query) {
+        return Collections.list(search.vectorSpaceSearch(Collections.enumeration(query), 10)) + "|"
+                + Collections.list(search.languageModelSearch(Collections.enumeration(query), 0.5, 10)) + "|"
+                + search.productSearch(Collections.enumeration(query), 10);
+    }
+}
@@ -0,0 +1,45 @@
+package webdata;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * CountingOutputStream class.
+ * Counts the bytes written through it, used for the postings lists pointers.
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private long size = 0;
+
+    /**
+     * CountingOutputStream constructor.
+     *
+     * @param out underlying output stream.
+     */
+    CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        size += len;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     */
+    long size() {
+        return size;
+    }
+}
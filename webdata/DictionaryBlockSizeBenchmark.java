@@ -0,0 +1,55 @@
+package webdata;
+
+import java.io.IOException;
+
+/**
+ * DictionaryBlockSizeBenchmark class.
+ * Builds an index of the given reviews file for every dictionary front coding block size k of the
+ * sweep, without a term hash or a term filter, and reports the size of the dictionary files, the
+ * number of block leaders held in memory, and the latency of looking up every term of the input and
+ * as many missing tokens.
+ * Usage: java webdata.DictionaryBlockSizeBenchmark inputFile [repetitions] [k ...]
+ */
+class DictionaryBlockSizeBenchmark {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final int[] BLOCK_SIZES = {4, 8, 16, 32, 64};
+    private static final String TOKENS_FRONT_CODING_INDEX = "/tokens_front_coding_index";
+    private static final String CONCATENATED_TOKENS = "/concatenated_tokens";
+
+    public static void main(String[] args) throws IOException {
+        String inputFile = args[0];
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int[] blockSizes = BLOCK_SIZES;
+        if (args.length > 2) {
+            blockSizes = new int[args.length - 2];
+            for (int i = 0; i < blockSizes.length; i++) {
+                blockSizes[i] = Integer.parseInt(args[i + 2]);
+            }
+        }
+        String[] terms = BenchmarkInput.readTerms(inputFile);
+        String[] missing = BenchmarkInput.missingTerms(terms);
+
+        for (int k : blockSizes) {
+            IndexWriterOptions options = new IndexWriterOptions();
+            options.setDictionaryBlockSize(k);
+            options.setTermFilterFalsePositiveRate(0);
+            String dir = BenchmarkInput.buildIndex(inputFile, options);
+            try {
+                IndexReader reader = new IndexReader(dir);
+                BenchmarkInput.lookupNanos(reader, terms, repetitions);   // warm up
+                long index = BenchmarkInput.fileSize(dir, TOKENS_FRONT_CODING_INDEX);
+                long tokens = BenchmarkInput.fileSize(dir, CONCATENATED_TOKENS);
+                System.out.printf("k=%-3d dictionary %,d bytes (index %,d, tokens %,d), %,d leaders in memory, "
+                                + "hit %.0f ns/lookup, miss %.0f ns/lookup%n",
+                        k, index + tokens, index, tokens, (terms.length + k - 1) / k,
+                        BenchmarkInput.lookupNanos(reader, terms, repetitions),
+                        BenchmarkInput.lookupNanos(reader, missing, repetitions));
+            } finally {
+                new IndexWriter().removeIndex(dir);
+            }
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package webdata;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 
 /**
@@ -8,35 +13,39 @@ import java.io.*;
  */
 class DictionaryEncoder {
 
-    private static final String MERGED_PAIRS_TMP = "/tmp/ExternalSort_tmp/mergedPairs_tmp";
     private static final String POSTINGS_LISTS = "/postings_lists";
+    private static final String POSTINGS_TMP = "postings_tmp";
 
     /**
      * ---- FIELDS ----
      **/
     private Parser parser;
     private int k;
+    private IndexWriterOptions.Codec codecType;
+    private int blockSize;
     private int numTerms;
     private int numTokens;
-    private DataInputStream postingsListsInput;
-    private DataOutputStream postingsListsOutput;
 
     private int[] freq;
     private int[] reviewFreq;
     private int[] lengths;
     private int[] prefixLengths;
     private long[] postingListPointers;
-    private String[] concatenatedStrings;
+    private byte[][] concatenatedBlocks;
 
     /**
      * Process the input data for the index before it being written to disk.
      *
      * @param parser Parser object.
+     * @param sorter external sorter holding the sorted pairs runs.
      * @param kValue value for K in K - 1 front encoding blocks size.
+     * @param header header of the index, giving the postings codec and block size.
      */
-    DictionaryEncoder(Parser parser, String dir, int kValue) {
+    DictionaryEncoder(Parser parser, ExternalSort sorter, String dir, int kValue, IndexHeader header) {
         this.parser = parser;
         this.k = kValue;
+        this.codecType = header.getPostingsCodec();
+        this.blockSize = header.getPostingsBlockSize();
 
         numTerms = parser.getNumOfTerms();
         numTokens = parser.getNumOfTokens();
@@ -46,14 +55,11 @@ class DictionaryEncoder {
         this.lengths = new int[numTerms];
         this.prefixLengths = new int[numTerms];
         this.postingListPointers = new long[numTerms];
-        this.concatenatedStrings = new String[(int) Math.ceil(numTerms / (double) kValue)];
+        this.concatenatedBlocks = new byte[(int) Math.ceil(numTerms / (double) kValue)][];
 
         try {
-            postingsListsInput = new DataInputStream(new BufferedInputStream(new FileInputStream(MERGED_PAIRS_TMP)));
-            postingsListsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dir + POSTINGS_LISTS)));
-
             concatenateTokens();
-            writePostings();
+            writePostings(sorter, dir);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -61,110 +67,221 @@ class DictionaryEncoder {
     }
 
     /**
-     * Returns the length of the longest common prefix of str1 and str2.
+     * Returns the length of the longest common prefix of term1 and term2.
      *
-     * @param str1 first token.
-     * @param str2 second token.
+     * @param term1 first token bytes.
+     * @param term2 second token bytes.
      * @return Length of the longest common prefix.
      */
-    private static int longestCommonPrefix(String str1, String str2) {
-        for (int i = 0; i < str1.length(); ++i) {
-            if (str1.charAt(i) != str2.charAt(i)) {
+    private static int longestCommonPrefix(byte[] term1, byte[] term2) {
+        int length = Math.min(term1.length, term2.length);
+        for (int i = 0; i < length; ++i) {
+            if (term1[i] != term2[i]) {
                 return i;
             }
         }
-        return str1.length();
+        return length;
     }
 
     /**
-     * Concatenates every k tokens into a single string.
+     * Concatenates the UTF-8 bytes of every k tokens into a single block, keeping only the suffix of
+     * every token but the first of a block. Lengths and prefixes are counted in bytes.
      */
     private void concatenateTokens() {
         String[] terms = parser.getSortedTerms();
 
-        StringBuilder str = new StringBuilder(terms[0]);
-        int commonPrefix;
-
-        lengths[0] = str.length();
-        prefixLengths[0] = 0;
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        byte[] prev = null;
 
-        for (int i = 1; i < terms.length; ++i) {
-            String cur = terms[i];
-            String prev = terms[i - 1];
-            commonPrefix = longestCommonPrefix(prev, cur);
-            lengths[i] = cur.length();
+        for (int i = 0; i < terms.length; ++i) {
+            byte[] cur = terms[i].getBytes(StandardCharsets.UTF_8);
+            lengths[i] = cur.length;
 
             if (i % k == 0) {
-                concatenatedStrings[i / k - 1] = str.append("\n").toString();
+                if (i > 0) {
+                    concatenatedBlocks[i / k - 1] = block.toByteArray();
+                    block.reset();
+                }
                 prefixLengths[i] = 0;
-                str = new StringBuilder(cur);
             } else {
-                prefixLengths[i] = commonPrefix;
-                str.append(cur.substring(commonPrefix)); // concat suffix
+                prefixLengths[i] = longestCommonPrefix(prev, cur);
             }
+            block.write(cur, prefixLengths[i], cur.length - prefixLengths[i]); // concat suffix
+            prev = cur;
         }
-        concatenatedStrings[concatenatedStrings.length - 1] = str.toString();
+        concatenatedBlocks[concatenatedBlocks.length - 1] = block.toByteArray();
     }
 
     /**
-     * Reads postings list from temp file.
-     *
-     * @param termId termId
-     * @throws IOException IOException.
+     * Encodes the postings lists of a range of termIds as the merged pairs stream by, computing the
+     * frequencies and posting list pointers of their terms, relative to the start of the segment.
+     * The (docId gap, frequency) postings of a list are encoded a block at a time by the postings codec,
+     * the first gap of a list being its first docId. The blocks of a list are buffered until it ends, so
+     * lists of more than one block can be written after their skip table, see PostingsIterator.
      */
-    private void writePostingsFrequencyList(int termId) throws IOException {
-        int repeats = 1;
-        int reviewFrequency = 1, frequency = 1;
-        int curDocId, prevDocId, curTermId;
-
-        if (termId == 0) {
-            postingsListsInput.readInt(); // term Id;
+    private class PostingsSegment implements PairSink {
+
+        private final File file;
+        private final CountingOutputStream output;
+        private final DataOutputStream skipOutput;
+        private final ByteArrayOutputStream listBlocks = new ByteArrayOutputStream();
+        private final PostingsCodec codec;
+        private final int[] gaps;
+        private final int[] freqs;
+        private int numPostings = 0;
+        private int[] skipDocIds = new int[16];
+        private int[] skipOffsets = new int[16];
+        private int numSkips = 0;
+        private int blockPrevDocId;
+        private long size = 0;
+        private int firstTermId = -1;
+        private int termId = -1;
+        private int prevDocId;
+        private int docId;
+        private int repeats;
+        private int reviewFrequency;
+        private int frequency;
+
+        PostingsSegment(File file) throws IOException {
+            this.file = file;
+            this.output = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            this.skipOutput = new DataOutputStream(output);
+            this.codec = PostingsCodec.create(codecType);
+            this.gaps = new int[blockSize];
+            this.freqs = new int[blockSize];
         }
-        curDocId = postingsListsInput.readInt(); // first doc Id
-        postingsListsOutput.write(GammaEncoder.encode(curDocId));
-
-        while (true) {
-            try {
-                curTermId = postingsListsInput.readInt();
-                if (curTermId != termId) {    // finished posting list
-                    break;
-                }
-                prevDocId = curDocId;
-                curDocId = postingsListsInput.readInt();
-
-                int gap = curDocId - prevDocId; // converting to a gap list
 
-                if (gap == 0) {     // token appears more than once in the same review.
-                    repeats++;
-                } else {
-                    postingsListsOutput.write(GammaEncoder.encode(repeats));
-                    postingsListsOutput.write(GammaEncoder.encode(gap));
+        @Override
+        public void write(long[] pairs, int n) throws IOException {
+            for (int i = 0; i < n; i++) {
+                int curTermId = ExternalSort.termId(pairs[i]);
+                int curDocId = ExternalSort.docId(pairs[i]);
+
+                if (curTermId != termId) {    // new posting list
+                    finishPostingsList();
+                    if (firstTermId < 0) {
+                        firstTermId = curTermId;
+                    }
+                    termId = curTermId;
+                    postingListPointers[termId] = output.size();
+                    prevDocId = 0;
+                    reviewFrequency = 1;
+                    frequency = 0;
+                } else if (curDocId != docId) {
+                    addPosting();
                     reviewFrequency++;
-                    repeats = 1;
+                } else {     // token appears more than once in the same review.
+                    repeats++;
+                    frequency++;
+                    continue;
                 }
+                docId = curDocId;
+                repeats = 1;
                 frequency++;
+            }
+        }
 
-            } catch (EOFException eof) {
-                break;
+        /**
+         * Adds the current docId and its frequency to the block, writing the block once it is full.
+         */
+        private void addPosting() throws IOException {
+            if (numPostings == 0) {
+                blockPrevDocId = prevDocId;
+            }
+            gaps[numPostings] = docId - prevDocId;  // converting to a gap list
+            freqs[numPostings++] = repeats;
+            prevDocId = docId;
+            if (numPostings == gaps.length) {
+                writeBlock();
             }
         }
-        postingsListsOutput.write(GammaEncoder.encode(repeats));
-        reviewFreq[termId] = reviewFrequency;
-        freq[termId] = frequency;
+
+        /**
+         * Encodes the block into the list blocks, adding a skip entry for every block but the first.
+         */
+        private void writeBlock() throws IOException {
+            if (listBlocks.size() > 0) {
+                if (numSkips == skipDocIds.length) {
+                    skipDocIds = Arrays.copyOf(skipDocIds, 2 * numSkips);
+                    skipOffsets = Arrays.copyOf(skipOffsets, 2 * numSkips);
+                }
+                skipDocIds[numSkips] = blockPrevDocId;
+                skipOffsets[numSkips++] = listBlocks.size();
+            }
+            codec.encodeBlock(gaps, freqs, numPostings, listBlocks);
+            numPostings = 0;
+        }
+
+        /**
+         * Writes the last block of the current posting list, then the skip table and the blocks of the
+         * list, and sets its term frequencies.
+         */
+        private void finishPostingsList() throws IOException {
+            if (termId >= 0) {
+                addPosting();
+                if (numPostings > 0) {
+                    writeBlock();
+                }
+                for (int i = 0; i < numSkips; i++) {
+                    skipOutput.writeInt(skipDocIds[i]);
+                    skipOutput.writeInt(skipOffsets[i]);
+                }
+                listBlocks.writeTo(output);
+                listBlocks.reset();
+                numSkips = 0;
+                reviewFreq[termId] = reviewFrequency;
+                freq[termId] = frequency;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finishPostingsList();
+            output.close();
+            size = output.size();
+        }
     }
 
     /**
-     * Reads postings list from temp file.
+     * Merges the sorted pairs straight into the postings lists file. Every merge segment is encoded by the
+     * thread merging it, the first one into the postings lists file, and the others into temporary files
+     * appended to it afterwards, shifting the pointers of their terms.
      *
      * @throws IOException IOException.
      */
-    private void writePostings() throws IOException {
-        for (int i = 0; i < numTerms; ++i) {
-            postingListPointers[i] = postingsListsOutput.size();
-            writePostingsFrequencyList(i);
+    private void writePostings(ExternalSort sorter, String dir) throws IOException {
+        List<PostingsSegment> segments = new ArrayList<>();
+        sorter.mergeSortedPairs(numTokens, segment -> {
+            File file = segment == 0 ? new File(dir + POSTINGS_LISTS)
+                    : new File(sorter.tempFile(POSTINGS_TMP + segment));
+            PostingsSegment postingsSegment = new PostingsSegment(file);
+            segments.add(postingsSegment);
+            return postingsSegment;
+        });
+
+        long offset = segments.get(0).size;
+        try (FileChannel output = new FileOutputStream(dir + POSTINGS_LISTS, true).getChannel()) {
+            for (PostingsSegment segment : segments.subList(1, segments.size())) {
+                for (int i = segment.firstTermId; segment.firstTermId >= 0 && i <= segment.termId; i++) {
+                    postingListPointers[i] += offset;
+                }
+                try (FileChannel input = new FileInputStream(segment.file).getChannel()) {
+                    long position = 0;
+                    while (position < segment.size) {
+                        position += input.transferTo(position, segment.size - position, output);
+                    }
+                }
+                segment.file.delete();
+                offset += segment.size;
+            }
         }
-        postingsListsInput.close();
-        postingsListsOutput.close();
+    }
+
+    /**
+     * @return Returns the terms, ordered by termId.
+     */
+    String[] getSortedTerms() {
+        return parser.getSortedTerms();
     }
 
     /**
@@ -217,9 +334,9 @@ class DictionaryEncoder {
     }
 
     /**
-     * @return Returns the i'th block concatenated string.
+     * @return Returns the i'th block concatenated UTF-8 bytes.
      */
-    String getConcatenatedString(int blockIdx) {
-        return concatenatedStrings[blockIdx];
+    byte[] getConcatenatedBlock(int blockIdx) {
+        return concatenatedBlocks[blockIdx];
     }
 }
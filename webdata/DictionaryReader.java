@@ -1,54 +1,67 @@
 package webdata;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.List;
 
+/**
+ * DictionaryReader class.
+ * Memory maps the front coding index and the concatenated tokens, and keeps only the first term of
+ * every K terms block in memory. The records are read from the mapped index by their offsets, which
+ * follow from the fixed record layout of a block, and the K - 1 other terms of a block are decoded
+ * only when a search lands in it.
+ * The concatenated tokens are length prefixed UTF-8 blocks found by the term pointer in the record of
+ * their first term, with lengths and prefixes in bytes. Indexes older than IndexHeader version 4 hold
+ * new line separated blocks of chars instead, with lengths and prefixes in chars, and no term pointers.
+ * Indexes with a term hash find the record of a token through it, and only decode its block up to it.
+ * Indexes with a term filter reject most tokens that are not in the dictionary before searching.
+ * The reader keeps no per lookup state in its fields and reads the postings with positional reads, so
+ * it may be used by concurrent threads.
+ */
 class DictionaryReader {
 
-    /**
-     * Record Class.
-     */
-    class Record {
-        int reviewFreq;
-        int collectionFreq;
-        long postingsListPtr;
-        int length;
-        int prefix;
-
-        /**
-         * Record Constructor.
-         */
-        Record(int reviewFreq, int collectionFreq, long postingsListPtr, int length, int prefix) {
-            this.reviewFreq = reviewFreq;
-            this.collectionFreq = collectionFreq;
-            this.postingsListPtr = postingsListPtr;
-            this.length = length;
-            this.prefix = prefix;
-        }
-    }
-
     /**
      * ---- CONSTANTS ----
      **/
     private static final String TOKENS_FRONT_CODING_INDEX = "/tokens_front_coding_index";
     private static final String POSTINGS_LISTS = "/postings_lists";
     private static final String CONCATENATED_TOKENS = "/concatenated_tokens";
+    private static final int INDEX_HEADER_BYTES = 2 * Integer.BYTES;   // number of terms and tokens
+    private static final int RECORD_BYTES = 2 * Integer.BYTES + Long.BYTES; // freqs and postings pointer
+    private static final int SHORT_BYTES = Short.BYTES;
+    private static final int TERM_PTR_BYTES = Integer.BYTES;
 
     /**
      * ---- FIELDS ----
      **/
     private int k;
+    private boolean legacyPostings;
+    private PostingsCodec postingsCodec;
+    private int postingsBlockSize;
+    private boolean skipData;
     private int numTerms;
     private int numTokens;
+    private int numBlocks;
+    private int blockBytes;
+    private boolean utf8Terms;
+    private int termPtrBytes;
+
+    private String[] blockLeaders;
+    private int[] blockStarts;          // offset of every block in the concatenated tokens
+    private int tokensLength;           // length of the concatenated tokens
 
-    private Record[] records;
-    private ArrayList<String> terms;
+    private TermHash termHash = null;
+    private TermFilter termFilter = null;
+    private PostingsCache postingsCache;
 
     private DictionaryDecoder dictionaryDecoder;
-    private DataInputStream frontCodingIndex;
-    private BufferedReader concatenatedTokens;
-    private RandomAccessFile postingsLists;     // TODO: maybe change to buffered input reader
+    private ByteBuffer frontCodingIndex;
+    private ByteBuffer concatenatedTokens;
+    private CharBuffer concatenatedChars;   // concatenated tokens of indexes before version 4
+    private FileChannel postingsLists;
 
 
     /**
@@ -56,25 +69,42 @@ class DictionaryReader {
      *
      * @param dir    directory.
      * @param kValue k value.
+     * @param header index header.
+     * @param cache  cache of the encoded postings lists.
      */
-    DictionaryReader(String dir, int kValue) {
+    DictionaryReader(String dir, int kValue, IndexHeader header, PostingsCache cache) {
         k = kValue;
+        postingsCache = cache;
+        legacyPostings = header.getVersion() == IndexHeader.LEGACY_VERSION;
+        postingsCodec = PostingsCodec.create(header.getPostingsCodec());
+        postingsBlockSize = header.getPostingsBlockSize();
+        skipData = header.hasSkipData();
         dictionaryDecoder = new DictionaryDecoder();
+        utf8Terms = header.hasUtf8Terms();
+        termPtrBytes = utf8Terms ? TERM_PTR_BYTES : 0;
+        // every record holds a length but the last of a block, and a prefix but the first
+        blockBytes = k * RECORD_BYTES + termPtrBytes + 2 * (k - 1) * SHORT_BYTES;
 
         try {
-            frontCodingIndex = new DataInputStream(new BufferedInputStream(new FileInputStream(
-                    dir + TOKENS_FRONT_CODING_INDEX)));
-            concatenatedTokens = new BufferedReader(new FileReader(dir + CONCATENATED_TOKENS));
-            postingsLists = new RandomAccessFile(dir + POSTINGS_LISTS, "r");
-
-            numTerms = frontCodingIndex.readInt();
-            numTokens = frontCodingIndex.readInt();
-
-            records = new Record[numTerms];
-            terms = new ArrayList<>();
-
-            readFrontCodingIndex();
-            readTerms();
+            frontCodingIndex = Utils.map(dir + TOKENS_FRONT_CODING_INDEX);
+            concatenatedTokens = Utils.map(dir + CONCATENATED_TOKENS);
+            if (!utf8Terms) {
+                concatenatedChars = concatenatedTokens.asCharBuffer();  // written as chars
+            }
+            postingsLists = new RandomAccessFile(dir + POSTINGS_LISTS, "r").getChannel();
+
+            numTerms = frontCodingIndex.getInt(0);
+            numTokens = frontCodingIndex.getInt(Integer.BYTES);
+            numBlocks = (numTerms + k - 1) / k;
+            tokensLength = utf8Terms ? concatenatedTokens.limit() : concatenatedChars.limit();
+
+            readBlockLeaders();
+            if (header.hasTermHash()) {
+                termHash = TermHash.read(dir);
+            }
+            if (header.hasTermFilter()) {
+                termFilter = TermFilter.read(dir);
+            }
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -82,141 +112,265 @@ class DictionaryReader {
     }
 
     /**
-     * Reads one record (reviewFreq, collectionFreq, postings list ptr, length, term ptr, prefix) from the disk.
+     * Returns the offset of the record of a term in the front coding index.
      *
-     * @param offset offset within block.
-     * @return Record.
-     * @throws IOException IOException.
+     * @param termIdx term index.
+     */
+    private int recordOffset(int termIdx) {
+        int offset = termIdx % k;
+        return INDEX_HEADER_BYTES + termIdx / k * blockBytes + (offset > 0 ? termPtrBytes : 0)
+                + offset * (RECORD_BYTES + SHORT_BYTES) + Math.max(0, offset - 1) * SHORT_BYTES;
+    }
+
+    private int getReviewFreq(int termIdx) {
+        return frontCodingIndex.getInt(recordOffset(termIdx));
+    }
+
+    private int getCollectionFreq(int termIdx) {
+        return frontCodingIndex.getInt(recordOffset(termIdx) + Integer.BYTES);
+    }
+
+    private long getPostingsListPtr(int termIdx) {
+        return frontCodingIndex.getLong(recordOffset(termIdx) + 2 * Integer.BYTES);
+    }
+
+    /**
+     * Returns the length of a term, which is not stored for the last term of a block.
+     */
+    private int getLength(int termIdx) {
+        int offset = recordOffset(termIdx) + RECORD_BYTES;
+        return frontCodingIndex.getShort(termIdx % k == 0 ? offset + termPtrBytes : offset);
+    }
+
+    /**
+     * Returns the offset of the block of a first term in the concatenated tokens, from version 4.
      */
-    private Record readRecord(int offset) throws IOException {
-        int reviewFreq, collectionFreq, length = 0, prefix = 0;
-        long postingsListPtr;
+    private int getTermPtr(int termIdx) {
+        return frontCodingIndex.getInt(recordOffset(termIdx) + RECORD_BYTES);
+    }
 
-        reviewFreq = frontCodingIndex.readInt();
-        collectionFreq = frontCodingIndex.readInt();
-        postingsListPtr = frontCodingIndex.readLong();
+    /**
+     * Returns the prefix a term shares with the previous one, which is not stored for the first term of
+     * a block.
+     */
+    private int getPrefix(int termIdx) {
+        int offset = recordOffset(termIdx) + RECORD_BYTES;
+        return frontCodingIndex.getShort(termIdx % k == k - 1 ? offset : offset + SHORT_BYTES);
+    }
 
-        if (offset != k - 1) {
-            length = frontCodingIndex.readShort();
+    /**
+     * Finds the start of every block in the concatenated tokens, from the term pointers or by the new
+     * lines separating the blocks of older indexes, and reads the first term of every block.
+     */
+    private void readBlockLeaders() {
+        blockStarts = new int[numBlocks];
+        blockLeaders = new String[numBlocks];
+        if (utf8Terms) {
+            for (int b = 0; b < numBlocks; b++) {
+                blockStarts[b] = getTermPtr(b * k) + Integer.BYTES;
+            }
+        } else {
+            int b = 1;
+            for (int i = 0; i < tokensLength && b < numBlocks; i++) {
+                if (concatenatedChars.get(i) == '\n') {
+                    blockStarts[b++] = i + 1;
+                }
+            }
         }
-        if (offset != 0) {
-            prefix = frontCodingIndex.readShort();
+        for (int b = 0; b < numBlocks; b++) {
+            int length = k == 1 ? blockEnd(b) - blockStarts[b] : getLength(b * k);
+            blockLeaders[b] = utf8Terms ? readUtf8(new byte[length], blockStarts[b], 0, length)
+                    : readChars(blockStarts[b], length);
         }
-        return new Record(reviewFreq, collectionFreq, postingsListPtr, length, prefix);
     }
 
     /**
-     * Reads front coding index file into an array of Records.
-     *
-     * @throws IOException IOException.
+     * Returns the offset of the end of a block in the concatenated tokens.
      */
-    private void readFrontCodingIndex() throws IOException {
-        for (int i = 0; i < numTerms; i++) {
-            records[i] = readRecord(i % k);
+    private int blockEnd(int block) {
+        if (utf8Terms) {
+            return blockStarts[block] + concatenatedTokens.getInt(blockStarts[block] - Integer.BYTES);
+        }
+        return block + 1 < numBlocks ? blockStarts[block + 1] - 1 : tokensLength;
+    }
+
+    private String readChars(int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = concatenatedChars.get(offset + i);
         }
+        return new String(chars);
     }
 
     /**
-     * Reads the concatenated string from the concatenated_tokens file,
-     * starting from termPtr until new line or EOF is reached.
+     * Reads UTF-8 bytes of the concatenated tokens after the first prefix bytes of the term bytes, and
+     * returns the term they make.
      *
-     * @return the concatenated tokens string.
-     * @throws IOException IOException.
+     * @param termBytes term bytes, large enough for the term.
+     * @param offset    offset of the bytes in the concatenated tokens.
+     * @param prefix    number of bytes kept from the previous term.
+     * @param length    number of bytes to read.
      */
-    private String readConcatString() throws IOException {
-        String temp = concatenatedTokens.readLine();
-        String line = "";
-        for (int i = 1; i < temp.length(); i += 2) {
-            line = line.concat(temp.substring(i, i + 1));
+    private String readUtf8(byte[] termBytes, int offset, int prefix, int length) {
+        for (int i = 0; i < length; i++) {
+            termBytes[prefix + i] = concatenatedTokens.get(offset + i);
         }
-        return line;
+        return new String(termBytes, 0, prefix + length, StandardCharsets.UTF_8);
     }
 
     /**
-     * Reads all terms from concatenated tokens file into terms array.
+     * Reads the postings list of a term from the postings cache, or from the postings_lists file,
+     * starting from its pointer until the pointer of the next term or EOF is reached.
      *
+     * @param termIdx term index.
+     * @return iterator over the postings list.
      * @throws IOException IOException.
      */
-    private void readTerms() throws IOException {
-        int blocks = (int) Math.ceil((double) numTerms / k);
-
-        for (int i = 0; i < blocks; ++i) {
-            int start = i * k;
-            int end = Math.min(numTerms, start + k);
-            Record[] block = Arrays.copyOfRange(records, start, end);
+    private PostingsIterator readPostingsList(int termIdx) throws IOException {
+        byte[] bytes = postingsCache.get(termIdx);
+        if (bytes == null) {
+            long start = getPostingsListPtr(termIdx);
+            long end = termIdx + 1 == numTerms ? postingsLists.size() : getPostingsListPtr(termIdx + 1);
+            bytes = new byte[(int) (end - start)];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {     // positional reads, so readers may share the channel
+                if (postingsLists.read(buffer, start + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            postingsCache.put(termIdx, bytes);
+        }
 
-            String str = readConcatString();
-            terms.addAll(dictionaryDecoder.separateTokens(block, str));
+        if (legacyPostings) {
+            ArrayList<Integer> gapList = GammaEncoder.decodeSequence(bytes);
+            ArrayList<Integer> postings = dictionaryDecoder.processGapsFrequencyList(gapList);
+            int[] docIds = new int[postings.size() / 2];
+            int[] freqs = new int[docIds.length];
+            for (int i = 0; i < docIds.length; i++) {
+                docIds[i] = postings.get(2 * i);
+                freqs[i] = postings.get(2 * i + 1);
+            }
+            return new PostingsIterator(docIds, freqs);
         }
+        return new PostingsIterator(bytes, 0, getReviewFreq(termIdx), postingsCodec, postingsBlockSize, skipData);
     }
 
     /**
-     * Reads postings frequency list from the postings_lists file,
-     * starting from start until end or EOF is reached.
+     * Searches the token in the K in K - 1 dictionary: a binary search over the first terms of the blocks
+     * finds the only block that may hold the token, whose other terms are then decoded.
      *
-     * @param start start pointer.
-     * @param end   end pointer.
-     * @return List of postings and frequencies.
-     * @throws IOException IOException.
+     * @param token token to search for.
+     * @return the record index for this token, -1 if it is not in the dictionary.
      */
-    private ArrayList<Integer> readPostingsList(long start, long end) throws IOException {
-        ArrayList<Byte> bytes = new ArrayList<>();
-
-        postingsLists.seek(start);
-        while (postingsLists.getFilePointer() != end) {
-            bytes.add(postingsLists.readByte());
+    private int binarySearch(String token) {
+        int lo = 0, hi = numBlocks - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = blockLeaders[mid].compareTo(token);
+            if (cmp == 0) {
+                return mid * k;
+            }
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
         }
-
-        ArrayList<Integer> gapList = GammaEncoder.decodeSequence(Utils.convertToArray(bytes));
-        return dictionaryDecoder.processGapsFrequencyList(gapList);
+        if (hi < 0) {
+            return -1;  // token before the first term
+        }
+        return scanBlock(hi, token, Math.min(numTerms, hi * k + k) - 1);
     }
 
     /**
-     * Binary search the token token in the K in K - 1 dictionary.
+     * Finds the token in the dictionary, through the term hash if the index has one. Tokens rejected by
+     * the term filter are not searched.
      *
      * @param token token to search for.
-     * @param start start index.
-     * @param end   end index.
-     * @return the record index for this token.
+     * @return the record index for this token, -1 if it is not in the dictionary.
      */
-    private int binarySearch(String token, int start, int end) {
-        int mid = (start + end) / 2;
-        int offset;
-
-        int last = Math.min(numTerms, mid * k + k);
-        List<String> tokens = terms.subList(mid * k, last);
+    private int findTerm(String token) {
+        if (termFilter != null && !termFilter.mightContain(token)) {
+            return -1;  // token not in dict
+        }
+        if (termHash == null) {
+            return binarySearch(token);
+        }
+        int termIdx = termHash.lookup(token);
+        if (termIdx < 0 || scanBlock(termIdx / k, token, termIdx) != termIdx) {
+            return -1;  // token not in dict
+        }
+        return termIdx;
+    }
 
-        if ((offset = tokens.indexOf(token)) >= 0) {    // token is in cur block
-            return mid * k + offset;
+    /**
+     * Decodes the terms of a block one by one, up to the given term, looking for the token.
+     *
+     * @param block block index.
+     * @param token token to search for.
+     * @param limit record index of the last term to decode.
+     * @return the record index for this token, -1 if it is not among the decoded terms.
+     */
+    private int scanBlock(int block, String token, int limit) {
+        String prev = blockLeaders[block];
+        int cmp = prev.compareTo(token);
+        if (cmp >= 0) {
+            return cmp == 0 ? block * k : -1;
         }
-        if (token.compareTo(tokens.get(0)) < 0) {   // token can be in prev blocks
-            return binarySearch(token, start, mid);
+
+        int end = blockEnd(block);
+        int last = Math.min(numTerms, block * k + k) - 1;
+        int pos = blockStarts[block];
+        byte[] termBytes = null;
+        if (utf8Terms) {
+            // the leader bytes start the term bytes, which the following terms overwrite after their prefix
+            int length = k == 1 ? end - pos : getLength(block * k);
+            termBytes = new byte[2 * length];
+            readUtf8(termBytes, pos, 0, length);
+            pos += length;
+        } else {
+            pos += prev.length();
         }
-        if (token.compareTo(tokens.get(tokens.size() - 1)) > 0) {   // token can be in following blocks
-            return binarySearch(token, mid + 1, end);
+        for (int termIdx = block * k + 1; termIdx <= limit; termIdx++) {
+            int prefix = getPrefix(termIdx);
+            int suffixLength = termIdx == last ? end - pos : getLength(termIdx) - prefix;
+            String term;
+            if (utf8Terms) {
+                if (termBytes.length < prefix + suffixLength) {
+                    termBytes = Arrays.copyOf(termBytes, 2 * (prefix + suffixLength));
+                }
+                term = readUtf8(termBytes, pos, prefix, suffixLength);
+            } else {
+                term = prev.substring(0, prefix) + readChars(pos, suffixLength);
+            }
+            cmp = term.compareTo(token);
+            if (cmp == 0) {
+                return termIdx;
+            }
+            if (cmp > 0) {
+                break;
+            }
+            pos += suffixLength;
+            prev = term;
         }
         return -1;  // token not in dict
     }
 
     /**
-     * Return a postings and frequencies list for token.
+     * Returns an iterator over the postings list of token, the shared empty iterator if the token is not
+     * in the dictionary.
      *
      * @param token token.
-     * @return postings and frequencies list.
+     * @return postings iterator.
      * @throws IOException IOException.
      */
-    private ArrayList<Integer> getPostingsFrequencyList(String token) throws IOException, IllegalArgumentException {
-        int termIdx = binarySearch(token, 0, numTerms / k);
+    PostingsIterator getPostingsIterator(String token) throws IOException {
+        int termIdx = findTerm(token);
         if (termIdx == -1) {
-            throw new IllegalArgumentException();
+            return PostingsIterator.EMPTY;
         }
 
-        Record cur = records[termIdx];
-        if (termIdx + 1 == numTerms) {
-            return readPostingsList(cur.postingsListPtr, postingsLists.length());
-        }
-        Record next = records[termIdx + 1];
-        return readPostingsList(cur.postingsListPtr, next.postingsListPtr);
+        return readPostingsList(termIdx);
     }
 
     /**
@@ -226,11 +380,11 @@ class DictionaryReader {
      * @param token token.
      */
     int getCollectionFrequency(String token) {
-        int recordIdx = binarySearch(token, 0, numTerms / k);
+        int recordIdx = findTerm(token);
         if (recordIdx < 0) {
             return 0;
         }
-        return records[recordIdx].collectionFreq;
+        return getCollectionFreq(recordIdx);
     }
 
     /**
@@ -240,11 +394,11 @@ class DictionaryReader {
      * @param token token.
      */
     int getTokenFrequency(String token) {
-        int recordIdx = binarySearch(token, 0, numTerms / k);
+        int recordIdx = findTerm(token);
         if (recordIdx < 0) {
             return 0;
         }
-        return records[recordIdx].reviewFreq;
+        return getReviewFreq(recordIdx);
     }
 
     /**
@@ -259,8 +413,8 @@ class DictionaryReader {
      */
     Enumeration<Integer> getPostingsFrequencyEnumeration(String token) {
         try {
-            return Collections.enumeration(getPostingsFrequencyList(token));
-        } catch (IOException | IllegalArgumentException e) {
+            return new PostingsEnumeration(getPostingsIterator(token));
+        } catch (IOException e) {
             return Collections.emptyEnumeration();
         }
     }
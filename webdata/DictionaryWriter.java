@@ -17,6 +17,8 @@ class DictionaryWriter {
      * ---- FIELDS ----
      **/
     private final int k;
+    private final String dir;
+    private final IndexHeader header;
     private final DictionaryEncoder dictionaryEncoder;
     private DataOutputStream frontCodingIndex;
     private DataOutputStream concatenatedTokens;
@@ -25,12 +27,16 @@ class DictionaryWriter {
      * Dictionary Writer constructor.
      *
      * @param parser Parser object.
+     * @param sorter external sorter holding the sorted pairs runs.
      * @param kValue value for K in K - 1 front encoding blocks size.
      * @param dir    directory to save dictionary files in.
+     * @param header header of the index, giving the postings codec and block size.
      */
-    DictionaryWriter(Parser parser, String dir, int kValue) {
+    DictionaryWriter(Parser parser, ExternalSort sorter, String dir, int kValue, IndexHeader header) {
         k = kValue;
-        dictionaryEncoder = new DictionaryEncoder(parser, dir, kValue);
+        this.dir = dir;
+        this.header = header;
+        dictionaryEncoder = new DictionaryEncoder(parser, sorter, dir, kValue, header);
 
         try {
             frontCodingIndex = new DataOutputStream(new BufferedOutputStream(
@@ -44,20 +50,25 @@ class DictionaryWriter {
     }
 
     /**
-     * Writes token's postings list to postings_lists file.
+     * Writes a block of concatenated tokens, prefixed by its length in bytes, to concatenated_tokens file.
      *
-     * @param blockIdx token's index.
+     * @param blockIdx block index.
+     * @return offset of the block in the file.
      * @throws IOException IOException.
      */
-    private long writeConcatenatedTokens(int blockIdx) throws IOException {
-        concatenatedTokens.writeChars(dictionaryEncoder.getConcatenatedString(blockIdx));
-        return concatenatedTokens.size();
+    private int writeConcatenatedTokens(int blockIdx) throws IOException {
+        int offset = concatenatedTokens.size();
+        byte[] block = dictionaryEncoder.getConcatenatedBlock(blockIdx);
+        concatenatedTokens.writeInt(block.length);
+        concatenatedTokens.write(block);
+        return offset;
     }
 
     /***
      * Writes K in K - 1 front encoding index to disk.
      * The index is saved in the directory specified by the user.
-     * The files created: tokens_front_coding_index, postings_lists, concatenated_tokens.
+     * The files created: tokens_front_coding_index, postings_lists, concatenated_tokens, and term_hash and
+     * term_filter if the header asks for them.
      * @throws IOException IOException.
      */
     void write() throws IOException {
@@ -71,16 +82,24 @@ class DictionaryWriter {
             frontCodingIndex.writeInt(dictionaryEncoder.getTokenFreq(i)); // write collectionFreq
             frontCodingIndex.writeLong(dictionaryEncoder.getPostingListPointer(i)); // write posting list pointer
 
+            if (i % k == 0) {   // new block
+                frontCodingIndex.writeInt(writeConcatenatedTokens(i / k)); // write term pointer
+            }
             if (i % k != k - 1) {
                 frontCodingIndex.writeShort(dictionaryEncoder.getTokenLength(i)); // write length
             }
-            if (i % k == 0) {   // new block
-                writeConcatenatedTokens(i / k); // write term pointer
-            } else {
+            if (i % k != 0) {
                 frontCodingIndex.writeShort(dictionaryEncoder.getTokenPrefix(i)); // write prefix length
             }
         }
         frontCodingIndex.close();
         concatenatedTokens.close();
+
+        if (header.hasTermHash() && !TermHash.write(dir, dictionaryEncoder.getSortedTerms())) {
+            header.setTermHash(false);  // colliding term hashes, readers fall back to binary search
+        }
+        if (header.hasTermFilter()) {
+            TermFilter.write(dir, dictionaryEncoder.getSortedTerms(), header.getTermFilterFalsePositiveRate());
+        }
     }
 }
@@ -1,8 +1,14 @@
 package webdata;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * ExternalSort class.
@@ -12,152 +18,393 @@ class ExternalSort {
     /**
      * ---- CONSTANTS ----
      **/
-    private static final String dir = "/tmp/ExternalSort_tmp";
+    private static final String DIR_PREFIX = "ExternalSort_tmp";
     private static final String TMP_FILENAME = "sortedPairs_tmp";
-    private static final String OUTPUT_FILENAME = "mergedPairs_tmp";
+    private static final int WRITE_BUFFER_PAIRS = 1 << 17;
+    private static final int MIN_READ_BLOCK_PAIRS = 1 << 10; // 8KB
+    private static final int MAX_READ_BLOCK_PAIRS = 1 << 17; // 1MB
+    private static final int SAMPLES_PER_PARTITION = 64;
+    private static final int MERGED_GROUP = -1; // intermediate runs, holding termIds
 
     /**
      * ---- FIELDS ----
      **/
-    private static final int SEQUENCE_SIZE_BYTES = (int) (160 * (1L << 20)); // 160MB
-    private static final int SEQUENCE_SIZE = (int) (1L << 7); // num of blocks in sequence
-    private static final int BLOCK_SIZE_BYTES = SEQUENCE_SIZE_BYTES / SEQUENCE_SIZE; // in bytes
-    private static final int BLOCK_SIZE = BLOCK_SIZE_BYTES / Integer.BYTES; // ints in block
-    static final int NUM_PAIRS = SEQUENCE_SIZE_BYTES / (Integer.BYTES * 2);
+    private final String dir;
+    private final int runPairs;
 
-    private DataInputStream[] sequences;
+    private ArrayList<Integer> sequenceGroups = new ArrayList<>();
+    private Map<Integer, int[]> groupTermIdMaps = new HashMap<>();
+    private Map<Integer, Integer> groupDocIdOffsets = new HashMap<>();
 
     private int numOfSequences;
+    private final int maxFanIn;
+    private final int numPartitions;
+    private final IndexWriterOptions.RunFormat runFormat;
 
     /**
-     * Constructor.
+     * Constructor, creates a new temporary directory for the runs.
      *
+     * @param tempDir       directory in which the temporary directory is created.
+     * @param runPairs      number of pairs in all run buffers together.
+     * @param maxFanIn      maximum number of runs open at once, at least 2.
+     * @param numPartitions number of termId ranges the final merge is split into, each on its own thread
+     *                      reading all runs, at most maxFanIn / 2 so each range merges at least 2 runs.
+     * @param runFormat     format of the runs.
      * @throws IOException
      */
-    ExternalSort() throws IOException {
-        Utils.createDirectory(dir);
+    ExternalSort(String tempDir, int runPairs, int maxFanIn, int numPartitions,
+                 IndexWriterOptions.RunFormat runFormat) throws IOException {
+        Utils.createDirectory(tempDir);
+        this.dir = Files.createTempDirectory(Paths.get(tempDir), DIR_PREFIX).toString();
+        this.runPairs = runPairs;
         numOfSequences = 0;
+        this.maxFanIn = maxFanIn;
+        this.numPartitions = Math.min(numPartitions, maxFanIn / 2);
+        this.runFormat = runFormat;
+    }
+
+    /**
+     * Constructor for sorters that keep the pairs in memory, without a temporary directory.
+     *
+     * @param runPairs number of pairs in all run buffers together.
+     */
+    ExternalSort(int runPairs) {
+        this.dir = null;
+        this.runPairs = runPairs;
+        this.maxFanIn = Integer.MAX_VALUE;
+        this.numPartitions = 1;
+        this.runFormat = IndexWriterOptions.RunFormat.RAW;
+    }
+
+    /**
+     * Returns the number of pairs in all run buffers together.
+     */
+    int getRunPairs() {
+        return runPairs;
+    }
+
+    /**
+     * Returns the number of buffers the run pairs are split into, see RunWriter.
+     */
+    int getRunBuffers() {
+        return RunWriter.NUM_BUFFERS;
+    }
+
+    /**
+     * Packs a termId,docId pair into a long, ordered by termId and then by docId.
+     *
+     * @param termId term Id.
+     * @param docId  document Id.
+     * @return packed pair.
+     */
+    static long pack(int termId, int docId) {
+        return ((long) termId << Integer.SIZE) | (docId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the term Id of a packed pair.
+     */
+    static int termId(long pair) {
+        return (int) (pair >>> Integer.SIZE);
+    }
+
+    /**
+     * Returns the document Id of a packed pair.
+     */
+    static int docId(long pair) {
+        return (int) pair;
     }
 
     /**
      * Writes sorted termId,docId pairs to a temporary file.
      *
-     * @param termIdDocIdPairs mapping of termIDs to docIDs.
+     * @param termIdDocIdPairs packed termID,docID pairs.
+     * @param n                number of pairs.
      * @throws IOException
      */
-    void writeSorted(int[][] termIdDocIdPairs, int n) throws IOException {
-        Arrays.sort(termIdDocIdPairs, 0, n, Comparator.comparingInt(a -> a[0]));
+    void writeSorted(long[] termIdDocIdPairs, int n) throws IOException {
+        Arrays.parallelSort(termIdDocIdPairs, 0, n);
+        writeRun(termIdDocIdPairs, n, 0);
+    }
 
-        DataOutputStream sortedPairTemp = new DataOutputStream(new BufferedOutputStream(
-                new FileOutputStream(dir + "/" + TMP_FILENAME + numOfSequences)));
-        numOfSequences++;
+    /**
+     * Allocates a new temporary file number for a run of the given group.
+     *
+     * @param group run group.
+     * @return sequence number.
+     */
+    private synchronized int newSequence(int group) {
+        sequenceGroups.add(group);
+        return numOfSequences++;
+    }
 
+    /**
+     * Writes termId,docId pairs to a new temporary file, in the run format.
+     *
+     * @param termIdDocIdPairs packed termID,docID pairs.
+     * @param n                number of pairs.
+     * @param group            run group.
+     * @throws IOException
+     */
+    private void writeRun(long[] termIdDocIdPairs, int n, int group) throws IOException {
+        RunOutput run = new RunOutput(dir + "/" + TMP_FILENAME + newSequence(group), runFormat);
+        run.write(termIdDocIdPairs, n);
+        run.close();
+    }
+
+    /**
+     * Writes pairs holding provisional termIds to a temporary file, sorted by the lexicographic order of
+     * their terms. Since every later order of the vocabulary keeps the relative order of these terms,
+     * the run stays sorted once its provisional termIds are mapped to termIds in the merge.
+     *
+     * @param termIdDocIdPairs packed provisional termID,docID pairs.
+     * @param n                number of pairs.
+     * @param terms            snapshot of the provisional termIds terms.
+     * @param group            run group, runs of the same group share provisional termIds.
+     * @throws IOException
+     */
+    void writeSortedProvisional(long[] termIdDocIdPairs, int n, TermTable terms, int group)
+            throws IOException {
+        int[] sortedIds = terms.sortedIds();
+        int[] ranks = new int[sortedIds.length];
+        for (int rank = 0; rank < sortedIds.length; rank++) {
+            ranks[sortedIds[rank]] = rank;
+        }
+        for (int i = 0; i < n; i++) {
+            long pair = termIdDocIdPairs[i];
+            termIdDocIdPairs[i] = pack(ranks[termId(pair)], docId(pair));
+        }
+        Arrays.parallelSort(termIdDocIdPairs, 0, n);
         for (int i = 0; i < n; i++) {
-            sortedPairTemp.writeInt(termIdDocIdPairs[i][0]);
-            sortedPairTemp.writeInt(termIdDocIdPairs[i][1]);
+            long pair = termIdDocIdPairs[i];
+            termIdDocIdPairs[i] = pack(sortedIds[termId(pair)], docId(pair));
         }
-        sortedPairTemp.close();
+        writeRun(termIdDocIdPairs, n, group);
     }
 
     /**
-     * Creates large index by merging all small indices.
+     * Sets the map from the termIds written to the temporary files of a run group to the final termIds,
+     * and the offset added to their docIds, both applied while merging.
      *
-     * @param n total number of pairs.
-     * @throws IOException
+     * @param group       run group.
+     * @param termIdMap   termIds map.
+     * @param docIdOffset docIds offset.
      */
-    void mergeSortedPairs(long n) throws IOException {
+    synchronized void setRunGroupMapping(int group, int[] termIdMap, int docIdOffset) {
+        groupTermIdMaps.put(group, termIdMap);
+        groupDocIdOffsets.put(group, docIdOffset);
+    }
 
-        DataOutputStream outputFile = new DataOutputStream(new BufferedOutputStream(
-                new FileOutputStream(dir + "/" + OUTPUT_FILENAME)));
+    /**
+     * Returns the path of a temporary file with the given name, in the temporary directory of the runs.
+     *
+     * @param name file name.
+     */
+    String tempFile(String name) {
+        return dir + "/" + name;
+    }
 
-        PriorityQueue<BlockEntry> blockEntryPQ = new PriorityQueue<>(numOfSequences);
-        init(blockEntryPQ);
-        long k = 0;
-        long numIntegers = 2 * n;
-        int[] outputBlock = new int[BLOCK_SIZE];
+    /**
+     * Creates large index by merging all small indices.
+     * While there are more runs than the maximum fan-in, the oldest runs are merged into intermediate
+     * runs holding termIds, each merge reducing the number of runs just enough to end with a single final
+     * merge. The final merge is split into termId ranges, each merged on its own thread into the sink
+     * of its segment. Every range opens all the final runs, so they are reduced to maxFanIn / numPartitions
+     * to keep the number of open runs within maxFanIn.
+     *
+     * @param n     total number of pairs.
+     * @param sinks creates the sink of every segment.
+     * @throws IOException
+     */
+    void mergeSortedPairs(long n, PairSink.Factory sinks) throws IOException {
+        List<Integer> runs = new ArrayList<>();
+        for (int i = 0; i < numOfSequences; i++) {
+            runs.add(i);
+        }
 
-        while (k < numIntegers) {
+        int finalFanIn = maxFanIn / numPartitions;
+        while (runs.size() > finalFanIn) {
+            List<Integer> merged = runs.subList(0, Math.min(maxFanIn, runs.size() - finalFanIn + 1));
+            int sequence = newSequence(MERGED_GROUP);
+            mergeRuns(merged, 0, Integer.MAX_VALUE, readBlockPairs(merged.size()),
+                    new RunOutput(tempFile(TMP_FILENAME + sequence), runFormat));
+            deleteRuns(merged);
+            merged.clear();
+            runs.add(sequence);
+        }
 
-            BlockEntry entry = blockEntryPQ.poll();
-            outputBlock[(int) (k % BLOCK_SIZE)] = entry.getTermId();
-            outputBlock[(int) ((k + 1) % BLOCK_SIZE)] = entry.getDocId();
+        int[] bounds = partitionBounds(runs, n);
+        int numOfSegments = bounds.length - 1;
+        int blockPairs = readBlockPairs(runs.size() * numOfSegments);
+        PairSink[] segmentSinks = new PairSink[numOfSegments];
+        for (int i = 0; i < numOfSegments; i++) {
+            segmentSinks[i] = sinks.create(i);
+        }
 
-            k += 2;
+        if (numOfSegments == 1) {
+            mergeRuns(runs, bounds[0], bounds[1], blockPairs, segmentSinks[0]);
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(numOfSegments);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < numOfSegments; i++) {
+                int segment = i;
+                futures.add(executor.submit(() -> mergeRuns(runs, bounds[segment], bounds[segment + 1],
+                        blockPairs, segmentSinks[segment])));
+            }
+            executor.shutdown();
 
-            if (k % BLOCK_SIZE == 0) {
-                flushBlock(outputFile, outputBlock, BLOCK_SIZE);
+            try {
+                for (Future<Void> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
             }
-            addNextBlockEntry(entry.getSequenceNumber(), blockEntryPQ);
         }
-        flushBlock(outputFile, outputBlock, (int) (k % BLOCK_SIZE));
-        outputFile.close();
-        closeInputs();
-        Runtime.getRuntime().gc();
+        deleteRuns(runs);
     }
 
     void clear() {
-        Utils.deleteDirectory(dir);
+        if (dir != null) {
+            Utils.deleteDirectory(dir);
+        }
     }
 
-
     /**
-     * Adds next entry in block of given sequence to priority queue of BlockEntries.
+     * Merges the pairs with termIds in [fromTermId, toTermId) of the given runs into a sink, and closes it.
      *
-     * @param sequenceIndex given sequence to read from.
-     * @param blockEntryPQ  priority queue of BlockEntries.
+     * @param runs       sequence numbers of the runs.
+     * @param fromTermId first termId.
+     * @param toTermId   termId after the last one.
+     * @param blockPairs number of pairs read at once from each run.
+     * @param output     merged pairs sink.
+     * @return null, so it can be submitted as a task.
+     * @throws IOException
      */
-    private void addNextBlockEntry(int sequenceIndex, PriorityQueue<BlockEntry> blockEntryPQ)
+    private Void mergeRuns(List<Integer> runs, int fromTermId, int toTermId, int blockPairs, PairSink output)
             throws IOException {
-
+        RunReader[] readers = new RunReader[runs.size()];
         try {
-            int termId = sequences[sequenceIndex].readInt();
-            int docId = sequences[sequenceIndex].readInt();
-            blockEntryPQ.add(new BlockEntry(termId, docId, sequenceIndex));
-
-        } catch (EOFException e) {
-            sequences[sequenceIndex].close();
-            File file = new File(dir + "/" + TMP_FILENAME + sequenceIndex);
-            file.delete();
+            for (int i = 0; i < readers.length; i++) {
+                readers[i] = openRun(runs.get(i), blockPairs);
+                if (fromTermId != 0 || toTermId != Integer.MAX_VALUE) {
+                    readers[i].setRange(fromTermId, toTermId);
+                }
+            }
+            LoserTree tree = new LoserTree(readers);
+            long[] outputBlock = new long[WRITE_BUFFER_PAIRS];
+            int m = 0;
+            long pair;
+            while ((pair = tree.next()) != RunReader.END) {
+                outputBlock[m++] = pair;
+                if (m == WRITE_BUFFER_PAIRS) {
+                    output.write(outputBlock, m);
+                    m = 0;
+                }
+            }
+            output.write(outputBlock, m);
+            output.close();
+        } finally {
+            for (RunReader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
         }
+        return null;
     }
 
     /**
-     * Read first block of each sequence and initialize BlockEntryPQ with first block entries.
+     * Chooses the termId ranges of the final merge segments, so that each holds about the same number of
+     * pairs, by sampling the termIds of every run at even intervals.
      *
-     * @param blockEntryPQ priority queue of BlockEntries.
+     * @param runs sequence numbers of the runs.
+     * @param n    total number of pairs.
+     * @return the first termId of every segment, followed by Integer.MAX_VALUE.
      * @throws IOException
      */
-    private void init(PriorityQueue<BlockEntry> blockEntryPQ) throws IOException {
-        String tempFilePath = dir + "/" + TMP_FILENAME;
+    private int[] partitionBounds(List<Integer> runs, long n) throws IOException {
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
 
-        sequences = new DataInputStream[numOfSequences];
+        if (numPartitions > 1) {
+            int numSamples = SAMPLES_PER_PARTITION * numPartitions;
+            List<long[]> samples = new ArrayList<>(); // termId, run index
+            double[] weights = new double[runs.size()];
 
-        for (int i = 0; i < numOfSequences; i++) {
-            sequences[i] = new DataInputStream(new BufferedInputStream(
-                    new FileInputStream(tempFilePath + i)));
-            addNextBlockEntry(i, blockEntryPQ);
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader reader = openRun(runs.get(i), 1);
+                try {
+                    long size = reader.size();
+                    long runSamples = Math.min(numSamples, size);
+                    weights[i] = size / (double) Math.max(runSamples, 1);
+                    for (long j = 0; j < runSamples; j++) {
+                        samples.add(new long[]{reader.termIdAt(j * size / runSamples), i});
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            samples.sort((a, b) -> Long.compare(a[0], b[0]));
+
+            double cumulative = 0;
+            for (long[] sample : samples) {
+                int termId = (int) sample[0];
+                if (cumulative >= n * bounds.size() / (double) numPartitions
+                        && termId > bounds.get(bounds.size() - 1)) {
+                    bounds.add(termId);
+                    if (bounds.size() == numPartitions) {
+                        break;
+                    }
+                }
+                cumulative += weights[(int) sample[1]];
+            }
         }
+        bounds.add(Integer.MAX_VALUE);
+
+        int[] boundsArr = new int[bounds.size()];
+        for (int i = 0; i < boundsArr.length; i++) {
+            boundsArr[i] = bounds.get(i);
+        }
+        return boundsArr;
+    }
+
+    /**
+     * Returns the number of pairs read at once from each run, so that the read blocks of all open
+     * runs together take about one run of memory.
+     *
+     * @param numRuns number of runs open at once.
+     */
+    private int readBlockPairs(int numRuns) {
+        return Math.max(MIN_READ_BLOCK_PAIRS, Math.min(MAX_READ_BLOCK_PAIRS, runPairs / Math.max(numRuns, 1)));
     }
 
     /**
-     * Closes all inputs files.
+     * Opens a reader for a temporary file, with the map and offset of its run group.
      *
+     * @param sequence   sequence number of the run.
+     * @param blockPairs number of pairs read at once.
+     * @return run reader.
      * @throws IOException
      */
-    private void closeInputs() throws IOException {
-        for (int i = 0; i < numOfSequences; i++) {
-            sequences[i].close();    //    private final DataOutputStream sortedPairTMP;
-            sequences[i] = null;
-        }
-        sequences = null;
+    private RunReader openRun(int sequence, int blockPairs) throws IOException {
+        int group = sequenceGroups.get(sequence);
+        return new RunReader(new File(tempFile(TMP_FILENAME + sequence)), runFormat, blockPairs,
+                groupTermIdMaps.get(group), groupDocIdOffsets.getOrDefault(group, 0));
     }
 
     /**
-     * Flushes output block to given file in disk.
+     * Deletes the temporary files of the given runs.
+     *
+     * @param runs sequence numbers of the runs.
      */
-    private void flushBlock(DataOutputStream outputFile, int[] outputBlock, int n) throws IOException {
-        for (int i = 0; i < n; i++) {
-            outputFile.writeInt(outputBlock[i]);
+    private void deleteRuns(List<Integer> runs) {
+        for (int sequence : runs) {
+            new File(tempFile(TMP_FILENAME + sequence)).delete();
+            new File(tempFile(TMP_FILENAME + sequence + RunOutput.INDEX_SUFFIX)).delete();
         }
     }
 }
@@ -0,0 +1,74 @@
+package webdata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * GammaCheck class.
+ * Round trip check of the gamma codes: encodes random gap sequences with GammaWriter and with the
+ * GammaEncoder of the postings format before version 1, decodes them with GammaReader and with
+ * GammaEncoder.decodeSequence, and compares the decoded values to the gaps.
+ * Usage: java webdata.GammaCheck [numSequences] [seed]
+ */
+class GammaCheck {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final int MAX_LENGTH = 1000;
+
+    public static void main(String[] args) throws IOException {
+        int numSequences = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        Random random = new Random(args.length > 1 ? Long.parseLong(args[1]) : 1);
+        int failures = 0;
+
+        for (int s = 0; s < numSequences; s++) {
+            int[] gaps = randomGaps(random, 1 + random.nextInt(MAX_LENGTH));
+
+            ByteArrayOutputStream writerBytes = new ByteArrayOutputStream();
+            GammaWriter writer = new GammaWriter(writerBytes);
+            ByteArrayOutputStream encoderBytes = new ByteArrayOutputStream();
+            for (int gap : gaps) {
+                writer.write(gap);
+                encoderBytes.write(GammaEncoder.encode(gap));
+            }
+            writer.align();
+
+            byte[] bytes = writerBytes.toByteArray();
+            GammaReader reader = new GammaReader(bytes, 0, bytes.length);
+            ArrayList<Integer> decoded = GammaEncoder.decodeSequence(encoderBytes.toByteArray());
+            for (int i = 0; i < gaps.length; i++) {
+                int fromWriter = reader.next();
+                int fromEncoder = i < decoded.size() ? decoded.get(i) : 0;
+                if (fromWriter != gaps[i] || fromEncoder != gaps[i]) {
+                    System.out.println("sequence " + s + " gap " + i + ": " + gaps[i]
+                            + " decoded " + fromWriter + " (GammaWriter) " + fromEncoder + " (GammaEncoder)");
+                    failures++;
+                    break;
+                }
+            }
+            if (reader.alignedPosition() != bytes.length || decoded.size() != gaps.length) {
+                System.out.println("sequence " + s + ": codes not fully consumed");
+                failures++;
+            }
+        }
+        System.out.println(failures == 0 ? numSequences + " sequences ok" : failures + " failures");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns positive gaps of all code lengths, mostly small as in postings lists.
+     */
+    private static int[] randomGaps(Random random, int n) {
+        int[] gaps = new int[n];
+        for (int i = 0; i < n; i++) {
+            int bits = random.nextInt(4) == 0 ? 1 + random.nextInt(31) : 1 + random.nextInt(8);
+            gaps[i] = Math.max(1, random.nextInt() >>> (Integer.SIZE - bits));
+        }
+        return gaps;
+    }
+}
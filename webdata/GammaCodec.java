@@ -0,0 +1,39 @@
+package webdata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * GammaCodec class.
+ * Writes the gap and the frequency of every posting as bit packed gamma codes, see GammaWriter.
+ * The writer, and a reader for every decoding thread, are reset for every block rather than allocated.
+ */
+class GammaCodec implements PostingsCodec {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final GammaWriter gammaWriter = new GammaWriter(null);
+    private final ThreadLocal<GammaReader> gammaReaders =
+            ThreadLocal.withInitial(() -> new GammaReader(EMPTY, 0, 0));
+
+    @Override
+    public void encodeBlock(int[] gaps, int[] freqs, int n, OutputStream out) throws IOException {
+        gammaWriter.reset(out);
+        for (int i = 0; i < n; i++) {
+            gammaWriter.write(gaps[i]);
+            gammaWriter.write(freqs[i]);
+        }
+        gammaWriter.align();
+    }
+
+    @Override
+    public int decodeBlock(byte[] bytes, int offset, int n, int[] gaps, int[] freqs) {
+        GammaReader gammaReader = gammaReaders.get();
+        gammaReader.reset(bytes, offset, bytes.length - offset);
+        for (int i = 0; i < n; i++) {
+            gaps[i] = gammaReader.next();
+            freqs[i] = gammaReader.next();
+        }
+        return gammaReader.alignedPosition();
+    }
+}
@@ -0,0 +1,94 @@
+package webdata;
+
+/**
+ * GammaReader class.
+ * Reads Elias gamma codes written by GammaWriter from a byte array. The bits are kept left aligned in
+ * a long window refilled a byte at a time, and the length of every code is found from the number of
+ * leading zeros of the window.
+ */
+class GammaReader {
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private byte[] bytes;
+    private int pos;
+    private int end;
+    private long window;
+    private int bits;
+
+    /**
+     * GammaReader constructor.
+     *
+     * @param bytes  bit stream bytes.
+     * @param offset offset of the first code.
+     * @param length number of bytes of the codes.
+     */
+    GammaReader(byte[] bytes, int offset, int length) {
+        reset(bytes, offset, length);
+    }
+
+    /**
+     * Starts reading codes from another byte range.
+     *
+     * @param bytes  bit stream bytes.
+     * @param offset offset of the first code.
+     * @param length number of bytes of the codes.
+     */
+    void reset(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.pos = offset;
+        this.end = offset + length;
+        this.window = 0;
+        this.bits = 0;
+    }
+
+    /**
+     * Reads the next gamma code. The caller knows how many codes there are, reading past the last one
+     * returns the zero padding.
+     *
+     * @return decoded positive integer.
+     */
+    int next() {
+        refill();
+        int zeros = Long.numberOfLeadingZeros(window);
+        int n = 2 * zeros + 1;
+        if (n > bits) {
+            if (zeros >= bits) {
+                return 0;
+            }
+            // codes of 2^29 and above may not fit the window, consume the zeros before the value bits
+            window <<= zeros;
+            bits -= zeros;
+            refill();
+            n = zeros + 1;
+            if (n > bits) {
+                return 0;
+            }
+        }
+        int x = (int) (window >>> (Long.SIZE - n));
+        window <<= n;
+        bits -= n;
+        return x;
+    }
+
+    /**
+     * Fills the window with whole bytes, to at least 57 bits unless the codes end first.
+     */
+    private void refill() {
+        while (bits <= Long.SIZE - Byte.SIZE && pos < end) {
+            window |= (bytes[pos++] & 0xFFL) << (Long.SIZE - Byte.SIZE - bits);
+            bits += Byte.SIZE;
+        }
+    }
+
+    /**
+     * Returns the offset of the first byte after the codes read so far, skipping the padding of the
+     * last byte, see GammaWriter.align.
+     *
+     * @return offset of the next aligned code.
+     */
+    int alignedPosition() {
+        return pos - bits / Byte.SIZE;
+    }
+}
@@ -0,0 +1,97 @@
+package webdata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * GammaWriter class.
+ * Writes Elias gamma codes contiguously into a bit stream, most significant bit first, filling a long
+ * word at a time. The code of x >= 1 with N = floor(log2(x)) is N zero bits followed by the N + 1 bits
+ * of x, which are exactly the low 2N + 1 bits of x, so every code is written with a single shift.
+ */
+class GammaWriter {
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private OutputStream output;
+    private final byte[] wordBytes = new byte[Long.BYTES];
+    private long word = 0;
+    private int used = 0;
+    private long size = 0;
+
+    /**
+     * GammaWriter constructor.
+     *
+     * @param output output stream the codes are written to.
+     */
+    GammaWriter(OutputStream output) {
+        this.output = output;
+    }
+
+    /**
+     * Starts writing codes to another output stream, from a whole byte.
+     *
+     * @param output output stream the codes are written to.
+     */
+    void reset(OutputStream output) {
+        this.output = output;
+        this.word = 0;
+        this.used = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Writes the gamma code of x.
+     *
+     * @param x positive integer.
+     * @throws IOException
+     */
+    void write(int x) throws IOException {
+        int n = 2 * (31 - Integer.numberOfLeadingZeros(x)) + 1;
+        int free = Long.SIZE - used;
+        if (n <= free) {
+            word |= (long) x << (free - n);
+            used += n;
+            if (used == Long.SIZE) {
+                flushWord(Long.BYTES);
+            }
+        } else {
+            word |= (long) x >>> (n - free);
+            flushWord(Long.BYTES);
+            used = n - free;
+            word = (long) x << (Long.SIZE - used);
+        }
+    }
+
+    /**
+     * Pads the bit stream with zero bits to a whole byte, so the next code starts a new byte.
+     *
+     * @throws IOException
+     */
+    void align() throws IOException {
+        if (used > 0) {
+            flushWord((used + Byte.SIZE - 1) / Byte.SIZE);
+        }
+    }
+
+    /**
+     * Returns the number of bytes written, whole once aligned.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Writes the first bytes of the current word and starts a new word.
+     */
+    private void flushWord(int numBytes) throws IOException {
+        for (int i = 0; i < numBytes; i++) {
+            wordBytes[i] = (byte) (word >>> (Long.SIZE - Byte.SIZE * (i + 1)));
+        }
+        output.write(wordBytes, 0, numBytes);
+        size += numBytes;
+        word = 0;
+        used = 0;
+    }
+}
@@ -0,0 +1,211 @@
+package webdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * InMemorySort class.
+ * Inverts the (termId, docId) pairs in memory instead of writing and merging runs: the docIds of every
+ * termId of a run group are appended to a growable int array, and the merge hands them to the sink in
+ * termId order. Used when the pairs of the input are estimated to fit the in-memory budget.
+ * It has no temporary directory, and the parsers fill a single small staging buffer, copied into the
+ * docIds lists on the parsing thread, instead of the run buffers of the external sort.
+ */
+class InMemorySort extends ExternalSort {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final int INPUT_BYTES_PER_PAIR = 6; // low estimate, so pairs are overestimated
+    private static final int GZIP_RATIO = 4;
+    private static final int BYTES_PER_PAIR = 2 * Integer.BYTES; // docId and growth slack
+    private static final int INITIAL_CAPACITY = 2;
+    private static final int WRITE_BUFFER_PAIRS = 1 << 16;
+    private static final int STAGING_PAIRS = 1 << 16;     // all parsers' staging buffers together
+
+    /**
+     * The docIds lists of the termIds of one run group.
+     */
+    private static class Group {
+        int[][] docIds = new int[1 << 10][];
+        int[] lengths = new int[1 << 10];
+        int[] termIdMap = null;
+        int docIdOffset = 0;
+
+        /**
+         * Appends a docId to the list of a termId.
+         */
+        void add(int termId, int docId) {
+            if (termId >= docIds.length) {
+                int capacity = Math.max(termId + 1, 2 * docIds.length);
+                docIds = Arrays.copyOf(docIds, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            int[] list = docIds[termId];
+            if (list == null) {
+                list = docIds[termId] = new int[INITIAL_CAPACITY];
+            } else if (lengths[termId] == list.length) {
+                list = docIds[termId] = Arrays.copyOf(list, 2 * list.length);
+            }
+            list[lengths[termId]++] = docId;
+        }
+
+        /**
+         * Returns the final termId of a termId of the group.
+         */
+        int mapTermId(int termId) {
+            return termIdMap == null ? termId : termIdMap[termId];
+        }
+
+        /**
+         * Returns the termIds of the group that have docIds, ordered by their final termIds.
+         */
+        int[] sortedTermIds() {
+            long[] mapped = new long[docIds.length];
+            int n = 0;
+            for (int termId = 0; termId < docIds.length; termId++) {
+                if (docIds[termId] != null) {
+                    mapped[n++] = ExternalSort.pack(mapTermId(termId), termId);
+                }
+            }
+            Arrays.sort(mapped, 0, n);
+            int[] sorted = new int[n];
+            for (int i = 0; i < n; i++) {
+                sorted[i] = ExternalSort.docId(mapped[i]);
+            }
+            return sorted;
+        }
+    }
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final List<Group> groups = new ArrayList<>();
+
+    /**
+     * Constructor.
+     */
+    InMemorySort() {
+        super(STAGING_PAIRS);
+    }
+
+    /**
+     * Returns 1, the staging buffer is copied into the docIds lists on the parsing thread.
+     */
+    @Override
+    int getRunBuffers() {
+        return 1;
+    }
+
+    /**
+     * Returns a high estimate of the memory needed to invert the given input in memory, with the staging
+     * buffers.
+     *
+     * @param inputFile input review file.
+     * @return estimated bytes.
+     */
+    static long estimateBytes(String inputFile) {
+        long inputBytes = new File(inputFile).length();
+        if (inputFile.endsWith(".gz")) {
+            inputBytes *= GZIP_RATIO;
+        }
+        return inputBytes / INPUT_BYTES_PER_PAIR * BYTES_PER_PAIR + (long) STAGING_PAIRS * Long.BYTES;
+    }
+
+    /**
+     * Returns the docIds lists of a run group, creating it if needed.
+     */
+    private synchronized Group group(int group) {
+        while (groups.size() <= group) {
+            groups.add(new Group());
+        }
+        return groups.get(group);
+    }
+
+    /**
+     * Appends the pairs, holding termIds, to the docIds lists of run group 0.
+     */
+    @Override
+    void writeSorted(long[] termIdDocIdPairs, int n) {
+        add(group(0), termIdDocIdPairs, n);
+    }
+
+    /**
+     * Appends the pairs, holding provisional termIds, to the docIds lists of their run group.
+     * The terms order is only needed once the termIds map of the group is set.
+     */
+    @Override
+    void writeSortedProvisional(long[] termIdDocIdPairs, int n, TermTable terms, int group) {
+        add(group(group), termIdDocIdPairs, n);
+    }
+
+    /**
+     * Appends pairs, which arrive in docIds order, to the docIds lists of a group.
+     */
+    private static void add(Group group, long[] termIdDocIdPairs, int n) {
+        for (int i = 0; i < n; i++) {
+            long pair = termIdDocIdPairs[i];
+            group.add(ExternalSort.termId(pair), ExternalSort.docId(pair));
+        }
+    }
+
+    @Override
+    synchronized void setRunGroupMapping(int group, int[] termIdMap, int docIdOffset) {
+        Group g = group(group);
+        g.termIdMap = termIdMap;
+        g.docIdOffset = docIdOffset;
+    }
+
+    /**
+     * Hands the docIds lists to the sink of a single segment, in termId order and then in docId order,
+     * releasing every list once it is written.
+     *
+     * @param n     total number of pairs.
+     * @param sinks creates the sink of the segment.
+     * @throws IOException
+     */
+    @Override
+    void mergeSortedPairs(long n, PairSink.Factory sinks) throws IOException {
+        Group[] byDocId = groups.toArray(new Group[0]);
+        Arrays.sort(byDocId, (a, b) -> Integer.compare(a.docIdOffset, b.docIdOffset));
+        int[][] sortedTermIds = new int[byDocId.length][];
+        int[] cursors = new int[byDocId.length];
+        int numTerms = 0;
+        for (int g = 0; g < byDocId.length; g++) {
+            sortedTermIds[g] = byDocId[g].sortedTermIds();
+            int m = sortedTermIds[g].length;
+            if (m > 0) {
+                numTerms = Math.max(numTerms, byDocId[g].mapTermId(sortedTermIds[g][m - 1]) + 1);
+            }
+        }
+
+        PairSink sink = sinks.create(0);
+        long[] outputBlock = new long[WRITE_BUFFER_PAIRS];
+        int m = 0;
+        for (int termId = 0; termId < numTerms; termId++) {
+            for (int g = 0; g < byDocId.length; g++) {
+                Group group = byDocId[g];
+                if (cursors[g] == sortedTermIds[g].length
+                        || group.mapTermId(sortedTermIds[g][cursors[g]]) != termId) {
+                    continue;
+                }
+                int groupTermId = sortedTermIds[g][cursors[g]++];
+                int[] docIds = group.docIds[groupTermId];
+                for (int i = 0; i < group.lengths[groupTermId]; i++) {
+                    outputBlock[m++] = ExternalSort.pack(termId, docIds[i] + group.docIdOffset);
+                    if (m == WRITE_BUFFER_PAIRS) {
+                        sink.write(outputBlock, m);
+                        m = 0;
+                    }
+                }
+                group.docIds[groupTermId] = null;
+            }
+        }
+        sink.write(outputBlock, m);
+        sink.close();
+        groups.clear();
+    }
+}
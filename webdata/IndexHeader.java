@@ -0,0 +1,252 @@
+package webdata;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * IndexHeader class.
+ * The index_header file records the format version of an index, as "key=value" lines.
+ * Indexes written before the header existed have no header file, and are read as LEGACY_VERSION.
+ * Version 1 stores the postings lists as bit packed gamma codes, each list starting on a new byte.
+ * Version 2 splits the postings lists into blocks written by the codec recorded in the header,
+ * see PostingsCodec. Version 1 lists are read as a single gamma block.
+ * Version 3 starts the postings lists of more than one block with a skip table, see PostingsIterator.
+ * Version 4 writes the concatenated tokens blocks as length prefixed UTF-8 bytes, with the offset of
+ * every block in the record of its first term, instead of new line separated chars.
+ * Any version may have a term hash, see TermHash, as recorded by the termHash key, and a term filter,
+ * see TermFilter, as recorded by its false positive rate.
+ * The dictionary front coding block size is recorded by the dictionaryBlockSize key, indexes without it
+ * use DEFAULT_DICTIONARY_BLOCK_SIZE.
+ * The review metadata layout is recorded by the reviewMetadataLayout key, indexes without it have ROWS,
+ * and the number of reviews by the numReviews key.
+ */
+class IndexHeader {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    static final int LEGACY_VERSION = 0;
+    static final int VERSION = 4;
+    static final int DEFAULT_DICTIONARY_BLOCK_SIZE = 10;
+    private static final int GAMMA_VERSION = 1;
+    private static final int SKIP_DATA_VERSION = 3;
+    private static final int UTF8_TERMS_VERSION = 4;
+    private static final String INDEX_HEADER = "/index_header";
+    private static final String VERSION_KEY = "version";
+    private static final String POSTINGS_CODEC_KEY = "postingsCodec";
+    private static final String POSTINGS_BLOCK_SIZE_KEY = "postingsBlockSize";
+    private static final String TERM_HASH_KEY = "termHash";
+    private static final String DICTIONARY_BLOCK_SIZE_KEY = "dictionaryBlockSize";
+    private static final String TERM_FILTER_KEY = "termFilterFalsePositiveRate";
+    private static final String REVIEW_METADATA_LAYOUT_KEY = "reviewMetadataLayout";
+    private static final String NUM_REVIEWS_KEY = "numReviews";
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final Properties properties = new Properties();
+
+    /**
+     * Creates a header of the current version.
+     */
+    IndexHeader() {
+        setInt(VERSION_KEY, VERSION);
+    }
+
+    /**
+     * Reads the header of the index in the given directory.
+     *
+     * @param dir index directory.
+     * @return the header, of LEGACY_VERSION if the index has no header file.
+     * @throws IOException if the header is of a newer version than this reader.
+     */
+    static IndexHeader read(String dir) throws IOException {
+        IndexHeader header = new IndexHeader();
+        File file = new File(dir + INDEX_HEADER);
+        if (!file.exists()) {
+            header.setInt(VERSION_KEY, LEGACY_VERSION);
+            return header;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            header.properties.load(reader);
+        }
+        if (header.getVersion() > VERSION) {
+            throw new IOException("unsupported index version " + header.getVersion());
+        }
+        return header;
+    }
+
+    /**
+     * Writes the header to the given index directory.
+     *
+     * @param dir index directory.
+     * @throws IOException
+     */
+    void write(String dir) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(dir + INDEX_HEADER), StandardCharsets.UTF_8))) {
+            writer.println(VERSION_KEY + "=" + getVersion());
+            for (String key : new TreeSet<>(properties.stringPropertyNames())) {
+                if (!key.equals(VERSION_KEY)) {
+                    writer.println(key + "=" + properties.getProperty(key));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the format version of the index.
+     */
+    int getVersion() {
+        return getInt(VERSION_KEY, LEGACY_VERSION);
+    }
+
+    /**
+     * @return the codec of the postings lists blocks.
+     */
+    IndexWriterOptions.Codec getPostingsCodec() {
+        String value = properties.getProperty(POSTINGS_CODEC_KEY);
+        return value == null ? IndexWriterOptions.Codec.GAMMA : IndexWriterOptions.Codec.valueOf(value.trim());
+    }
+
+    /**
+     * Sets the codec of the postings lists blocks.
+     *
+     * @param codec postings codec.
+     */
+    void setPostingsCodec(IndexWriterOptions.Codec codec) {
+        properties.setProperty(POSTINGS_CODEC_KEY, codec.name());
+    }
+
+    /**
+     * @return the number of postings in every postings lists block but the last of each list.
+     */
+    int getPostingsBlockSize() {
+        return getVersion() == GAMMA_VERSION ? Integer.MAX_VALUE
+                : getInt(POSTINGS_BLOCK_SIZE_KEY, PostingsCodec.BLOCK_SIZE);
+    }
+
+    /**
+     * Sets the number of postings in every postings lists block but the last of each list.
+     *
+     * @param blockSize postings block size.
+     */
+    void setPostingsBlockSize(int blockSize) {
+        setInt(POSTINGS_BLOCK_SIZE_KEY, blockSize);
+    }
+
+    /**
+     * @return true if the postings lists of more than one block start with a skip table.
+     */
+    boolean hasSkipData() {
+        return getVersion() >= SKIP_DATA_VERSION;
+    }
+
+    /**
+     * @return true if the concatenated tokens are length prefixed UTF-8 blocks found by term pointers.
+     */
+    boolean hasUtf8Terms() {
+        return getVersion() >= UTF8_TERMS_VERSION;
+    }
+
+    /**
+     * @return the number of terms in every front coding block of the dictionary.
+     */
+    int getDictionaryBlockSize() {
+        return getInt(DICTIONARY_BLOCK_SIZE_KEY, DEFAULT_DICTIONARY_BLOCK_SIZE);
+    }
+
+    /**
+     * Sets the number of terms in every front coding block of the dictionary.
+     *
+     * @param blockSize dictionary block size.
+     */
+    void setDictionaryBlockSize(int blockSize) {
+        setInt(DICTIONARY_BLOCK_SIZE_KEY, blockSize);
+    }
+
+    /**
+     * @return true if the index has a term hash.
+     */
+    boolean hasTermHash() {
+        return getInt(TERM_HASH_KEY, 0) != 0;
+    }
+
+    /**
+     * Sets whether the index has a term hash.
+     *
+     * @param termHash true if the term hash is written.
+     */
+    void setTermHash(boolean termHash) {
+        setInt(TERM_HASH_KEY, termHash ? 1 : 0);
+    }
+
+    /**
+     * @return the false positive rate of the term filter, 0 if the index has none.
+     */
+    double getTermFilterFalsePositiveRate() {
+        String value = properties.getProperty(TERM_FILTER_KEY);
+        return value == null ? 0 : Double.parseDouble(value.trim());
+    }
+
+    /**
+     * Sets the false positive rate of the term filter.
+     *
+     * @param falsePositiveRate false positive rate, 0 if the filter is not written.
+     */
+    void setTermFilterFalsePositiveRate(double falsePositiveRate) {
+        properties.setProperty(TERM_FILTER_KEY, Double.toString(falsePositiveRate));
+    }
+
+    /**
+     * @return true if the index has a term filter.
+     */
+    boolean hasTermFilter() {
+        return getTermFilterFalsePositiveRate() > 0;
+    }
+
+    /**
+     * @return the layout of the review metadata.
+     */
+    IndexWriterOptions.ReviewMetadataLayout getReviewMetadataLayout() {
+        String value = properties.getProperty(REVIEW_METADATA_LAYOUT_KEY);
+        return value == null ? IndexWriterOptions.ReviewMetadataLayout.ROWS
+                : IndexWriterOptions.ReviewMetadataLayout.valueOf(value.trim());
+    }
+
+    /**
+     * Sets the layout of the review metadata.
+     *
+     * @param layout review metadata layout.
+     */
+    void setReviewMetadataLayout(IndexWriterOptions.ReviewMetadataLayout layout) {
+        properties.setProperty(REVIEW_METADATA_LAYOUT_KEY, layout.name());
+    }
+
+    /**
+     * @return the number of reviews in the index, -1 if it is not recorded.
+     */
+    int getNumReviews() {
+        return getInt(NUM_REVIEWS_KEY, -1);
+    }
+
+    /**
+     * Sets the number of reviews in the index.
+     *
+     * @param numReviews number of reviews.
+     */
+    void setNumReviews(int numReviews) {
+        setInt(NUM_REVIEWS_KEY, numReviews);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private void setInt(String key, int value) {
+        properties.setProperty(key, Integer.toString(value));
+    }
+}
@@ -1,22 +1,52 @@
 package webdata;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Enumeration;
 
+/**
+ * Class IndexReader.
+ * An IndexReader and the ReviewSearch built on it may be shared by concurrent threads.
+ */
 public class IndexReader {
 
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final long DEFAULT_POSTINGS_CACHE_BYTES = 16L << 20;
+
     /**
      * ---- FILES ----
      **/
     private DictionaryReader dictionaryReader;
     private ReviewIndexReader reviewIndexReader;
     private ProductIndexReader productIndexReader;
+    private PostingsCache postingsCache;
 
     /**
      * Creates an IndexReader which will read from the given directory
      */
     public IndexReader(String dir) {
-        dictionaryReader = new DictionaryReader(dir, 10);
-        reviewIndexReader = new ReviewIndexReader(dir);
+        this(dir, DEFAULT_POSTINGS_CACHE_BYTES);
+    }
+
+    /**
+     * Creates an IndexReader which will read from the given directory, caching up to the given number
+     * of bytes of postings lists
+     */
+    public IndexReader(String dir, long postingsCacheBytes) {
+        if (postingsCacheBytes < 0) {
+            throw new IllegalArgumentException("postingsCacheBytes must not be negative");
+        }
+        postingsCache = new PostingsCache(postingsCacheBytes);
+        IndexHeader header;
+        try {
+            header = IndexHeader.read(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        dictionaryReader = new DictionaryReader(dir, header.getDictionaryBlockSize(), header, postingsCache);
+        reviewIndexReader = new ReviewIndexReader(dir, header);
         productIndexReader = new ProductIndexReader(dir);
     }
 
@@ -60,6 +90,35 @@ public class IndexReader {
         return reviewIndexReader.getReviewLength(reviewId);
     }
 
+    /**
+     * Fills out with the scores of the given reviews, -1 for ids with no review
+     * Reads sequentially when the ids are sorted, as in a postings list
+     */
+    public void getReviewScores(int[] reviewIds, int[] out) {
+        reviewIndexReader.getReviewScores(reviewIds, out);
+    }
+
+    /**
+     * Fills out with the helpfulness numerators of the given reviews, -1 for ids with no review
+     */
+    public void getReviewHelpfulnessNumerators(int[] reviewIds, int[] out) {
+        reviewIndexReader.getReviewHelpfulnessNumerators(reviewIds, out);
+    }
+
+    /**
+     * Fills out with the helpfulness denominators of the given reviews, -1 for ids with no review
+     */
+    public void getReviewHelpfulnessDenominators(int[] reviewIds, int[] out) {
+        reviewIndexReader.getReviewHelpfulnessDenominators(reviewIds, out);
+    }
+
+    /**
+     * Fills out with the number of tokens in the given reviews, -1 for ids with no review
+     */
+    public void getReviewLengths(int[] reviewIds, int[] out) {
+        reviewIndexReader.getReviewLengths(reviewIds, out);
+    }
+
     /**
      * Return the number of reviews containing a given token (i.e., word)
      * Returns 0 if there are no reviews containing this token
@@ -93,6 +152,28 @@ public class IndexReader {
         return dictionaryReader.getPostingsFrequencyEnumeration(lower);
     }
 
+    /**
+     * Returns an iterator over the ids of the reviews containing the given token and the number of
+     * times it appears in each, sorted by id. The list is decoded as it is iterated, without boxing,
+     * and can advance past whole blocks of it.
+     * Returns an empty iterator if there are no reviews containing this token.
+     * Throws UncheckedIOException if the postings list cannot be read.
+     */
+    public PostingsIterator getPostingsIterator(String token) {
+        try {
+            return dictionaryReader.getPostingsIterator(token.toLowerCase());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the postings lists cache of this reader, with its hit, miss and eviction counters
+     */
+    public PostingsCache getPostingsCache() {
+        return postingsCache;
+    }
+
     /**
      * Return the number of product reviews available in the system
      */
@@ -8,6 +8,24 @@ import java.nio.file.*;
  */
 public class IndexWriter {
 
+    private final IndexWriterOptions options;
+
+    /**
+     * Creates an IndexWriter with the default options.
+     */
+    public IndexWriter() {
+        this(new IndexWriterOptions());
+    }
+
+    /**
+     * Creates an IndexWriter with the given options.
+     *
+     * @param options index build options.
+     */
+    public IndexWriter(IndexWriterOptions options) {
+        this.options = options;
+    }
+
     /**
      * Given product review data, creates an on disk index
      * inputFile is the path to the file containing the review data
@@ -17,8 +35,72 @@ public class IndexWriter {
     public void write(String inputFile, String dir) {
         try {
             Utils.createDirectory(dir);
-            ExternalSort sorter = new ExternalSort();
-            Parser parser = new Parser(inputFile, sorter);
+            MemoryGovernor governor = new MemoryGovernor(options.getMemoryBudget());
+            ExternalSort sorter = createSorter(inputFile, governor);
+            Parser parser;
+            IndexWriterOptions.BuildMode mode = options.getBuildMode();
+            if (mode == IndexWriterOptions.BuildMode.PARALLEL && !inputFile.endsWith(".gz")) {
+                parser = new ParallelParser(inputFile, sorter, options.getNumThreads(),
+                        governor.getBatchSize()).parse(dir);
+                new ProductIndexWriter(parser, dir).write();
+            } else if (mode == IndexWriterOptions.BuildMode.PIPELINED) {
+                parser = new PipelinedParser(inputFile, sorter, governor.getBatchSize()).parse(dir);
+            } else {
+                boolean singlePass = mode != IndexWriterOptions.BuildMode.TWO_PASS;
+                parser = new Parser(inputFile, sorter, singlePass);
+                parser.setBatchSize(governor.getBatchSize());
+                parseSequential(parser, dir);
+            }
+
+            IndexHeader header = new IndexHeader();
+            header.setPostingsCodec(options.getCodec());
+            header.setPostingsBlockSize(PostingsCodec.BLOCK_SIZE);
+            header.setTermHash(options.getTermHash());
+            header.setDictionaryBlockSize(options.getDictionaryBlockSize());
+            header.setTermFilterFalsePositiveRate(options.getTermFilterFalsePositiveRate());
+            IndexWriterOptions.ReviewMetadataLayout layout = options.getReviewMetadataLayout();
+            header.setReviewMetadataLayout(layout);
+            header.setNumReviews(layout == IndexWriterOptions.ReviewMetadataLayout.COLUMNS
+                    ? ReviewIndexWriter.writeColumns(dir) : ReviewIndexWriter.countReviews(dir));
+            DictionaryWriter dictionaryWriter = new DictionaryWriter(parser, sorter, dir,
+                    header.getDictionaryBlockSize(), header);
+            dictionaryWriter.write();
+            header.write(dir);
+            sorter.clear();
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates an in memory sorter if the pairs of the input are estimated to fit the in memory budget,
+     * and an external sorter otherwise.
+     *
+     * @param inputFile input review file.
+     * @param governor  memory governor of the build.
+     * @return pairs sorter.
+     * @throws IOException
+     */
+    private ExternalSort createSorter(String inputFile, MemoryGovernor governor) throws IOException {
+        if (options.getInMemoryInversion()
+                && InMemorySort.estimateBytes(inputFile) <= governor.getInMemoryBudget()) {
+            return new InMemorySort();
+        }
+        return new ExternalSort(options.getTempDir(), governor.getRunPairs(), options.getMaxMergeFanIn(),
+                options.getNumMergePartitions(), options.getRunFormat());
+    }
+
+    /**
+     * Parses the input on the calling thread, writes the review and product indices,
+     * and writes the (termId, docId) pairs runs.
+     *
+     * @param parser input Parser.
+     * @param dir    index directory.
+     * @throws IOException
+     */
+    static void parseSequential(Parser parser, String dir) throws IOException {
+        try {
             ReviewIndexWriter reviewIndexWriter = new ReviewIndexWriter(parser, dir);
             ProductIndexWriter productIndexWriter = new ProductIndexWriter(parser, dir);
 
@@ -32,14 +114,8 @@ public class IndexWriter {
             productIndexWriter.write();
 
             parser.parsePostingsLists();
-            sorter.mergeSortedPairs(parser.getNumOfTokens());
-
-            DictionaryWriter dictionaryWriter = new DictionaryWriter(parser, dir, 10);
-            dictionaryWriter.write();
-            sorter.clear();
-
-        } catch (IOException e) {
-            e.printStackTrace();
+        } finally {
+            parser.abort();
         }
     }
 
@@ -0,0 +1,312 @@
+package webdata;
+
+/**
+ * IndexWriterOptions class.
+ * Settings used by IndexWriter when building an index.
+ */
+public class IndexWriterOptions {
+
+    /**
+     * Build modes.
+     * TWO_PASS reads the input twice, once for the terms and metadata and once for the postings.
+     * SINGLE_PASS reads the input once, spilling pairs with provisional termIds that are remapped in the merge.
+     * PARALLEL parses byte ranges of an uncompressed input on several threads, each like SINGLE_PASS.
+     * Gzip inputs are built in SINGLE_PASS mode instead.
+     * PIPELINED runs decompression, line splitting, tokenizing and run spilling on separate threads,
+     * and prints the utilization of each stage.
+     */
+    public enum BuildMode {
+        TWO_PASS,
+        SINGLE_PASS,
+        PARALLEL,
+        PIPELINED
+    }
+
+    /**
+     * Formats of the sorted runs written to the temporary directory.
+     * RAW writes every (termId, docId) pair as two ints.
+     * VBYTE writes the termId gaps and docId gaps of every block of pairs as variable byte codes.
+     */
+    public enum RunFormat {
+        RAW,
+        VBYTE
+    }
+
+    /**
+     * Codecs of the postings lists blocks.
+     * GAMMA writes the docId gaps and frequencies as bit packed Elias gamma codes.
+     * VBYTE writes them as variable byte codes.
+     * PFOR writes them as patched frames of fixed width values, with exceptions stored aside.
+     */
+    public enum Codec {
+        GAMMA,
+        VBYTE,
+        PFOR
+    }
+
+    /**
+     * Layouts of the review metadata.
+     * ROWS writes the fields of every review as a fixed size row.
+     * COLUMNS writes every field as a column of values packed to its minimum width, and the product id
+     * once for every run of reviews of the same product.
+     */
+    public enum ReviewMetadataLayout {
+        ROWS,
+        COLUMNS
+    }
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private BuildMode buildMode = BuildMode.TWO_PASS;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private int maxMergeFanIn = 128;
+    private int numMergePartitions = 1;
+    private RunFormat runFormat = RunFormat.RAW;
+    private boolean inMemoryInversion = true;
+    private Codec codec = Codec.GAMMA;
+    private boolean termHash = false;
+    private int dictionaryBlockSize = 10;
+    private double termFilterFalsePositiveRate = 0.01;
+    private ReviewMetadataLayout reviewMetadataLayout = ReviewMetadataLayout.ROWS;
+    private long memoryBudget = Runtime.getRuntime().maxMemory() / 4 * 3;
+    private String tempDir = System.getProperty("java.io.tmpdir");
+
+    /**
+     * @return the build mode.
+     */
+    public BuildMode getBuildMode() {
+        return buildMode;
+    }
+
+    /**
+     * Sets the build mode.
+     *
+     * @param buildMode new build mode.
+     */
+    public void setBuildMode(BuildMode buildMode) {
+        this.buildMode = buildMode;
+    }
+
+    /**
+     * @return the number of threads used by the PARALLEL build mode.
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Sets the number of threads used by the PARALLEL build mode.
+     *
+     * @param numThreads new number of threads, at least 1.
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads must be positive");
+        }
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @return the maximum number of runs open at once.
+     */
+    public int getMaxMergeFanIn() {
+        return maxMergeFanIn;
+    }
+
+    /**
+     * Sets the maximum number of runs open at once, more runs are first merged into intermediate runs.
+     *
+     * @param maxMergeFanIn new maximum fan-in, at least 2.
+     */
+    public void setMaxMergeFanIn(int maxMergeFanIn) {
+        if (maxMergeFanIn < 2) {
+            throw new IllegalArgumentException("maxMergeFanIn must be at least 2");
+        }
+        this.maxMergeFanIn = maxMergeFanIn;
+    }
+
+    /**
+     * @return the number of termId ranges the final merge is split into.
+     */
+    public int getNumMergePartitions() {
+        return numMergePartitions;
+    }
+
+    /**
+     * Sets the number of termId ranges the final merge is split into, each merged on its own thread.
+     * Every range reads all the final runs, so the runs are first merged down to maxMergeFanIn divided by
+     * the number of ranges, which is capped at maxMergeFanIn / 2.
+     *
+     * @param numMergePartitions new number of partitions, at least 1.
+     */
+    public void setNumMergePartitions(int numMergePartitions) {
+        if (numMergePartitions < 1) {
+            throw new IllegalArgumentException("numMergePartitions must be positive");
+        }
+        this.numMergePartitions = numMergePartitions;
+    }
+
+    /**
+     * @return the format of the sorted runs.
+     */
+    public RunFormat getRunFormat() {
+        return runFormat;
+    }
+
+    /**
+     * Sets the format of the sorted runs.
+     *
+     * @param runFormat new run format.
+     */
+    public void setRunFormat(RunFormat runFormat) {
+        this.runFormat = runFormat;
+    }
+
+    /**
+     * @return the codec of the postings lists.
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Sets the codec of the postings lists, recorded in the index header for the readers.
+     *
+     * @param codec new postings codec.
+     */
+    public void setCodec(Codec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * @return true if a minimal perfect hash of the terms is written next to the dictionary.
+     */
+    public boolean getTermHash() {
+        return termHash;
+    }
+
+    /**
+     * Sets whether a minimal perfect hash of the terms is written next to the dictionary, so readers find
+     * the termId of a token in constant time instead of by binary search, for about 7 bytes per term.
+     *
+     * @param termHash true to write the term hash.
+     */
+    public void setTermHash(boolean termHash) {
+        this.termHash = termHash;
+    }
+
+    /**
+     * @return the number of terms in every front coding block of the dictionary.
+     */
+    public int getDictionaryBlockSize() {
+        return dictionaryBlockSize;
+    }
+
+    /**
+     * Sets the number of terms in every front coding block of the dictionary, recorded in the index header
+     * for the readers. Larger blocks make a smaller dictionary, with fewer block leaders kept in memory,
+     * and slower lookups, which decode up to a whole block.
+     *
+     * @param dictionaryBlockSize new block size, at least 1.
+     */
+    public void setDictionaryBlockSize(int dictionaryBlockSize) {
+        if (dictionaryBlockSize < 1) {
+            throw new IllegalArgumentException("dictionaryBlockSize must be positive");
+        }
+        this.dictionaryBlockSize = dictionaryBlockSize;
+    }
+
+    /**
+     * @return the false positive rate of the term filter, 0 if no filter is written.
+     */
+    public double getTermFilterFalsePositiveRate() {
+        return termFilterFalsePositiveRate;
+    }
+
+    /**
+     * Sets the false positive rate of the Bloom filter over the terms, which lets readers reject most
+     * tokens that are not in the dictionary without searching it. Lower rates make a larger filter,
+     * about 1.2 bytes per term at 1%.
+     *
+     * @param termFilterFalsePositiveRate new rate in [0, 1), 0 to write no filter.
+     */
+    public void setTermFilterFalsePositiveRate(double termFilterFalsePositiveRate) {
+        if (!(termFilterFalsePositiveRate >= 0 && termFilterFalsePositiveRate < 1)) {
+            throw new IllegalArgumentException("termFilterFalsePositiveRate must be in [0, 1)");
+        }
+        this.termFilterFalsePositiveRate = termFilterFalsePositiveRate;
+    }
+
+    /**
+     * @return the layout of the review metadata.
+     */
+    public ReviewMetadataLayout getReviewMetadataLayout() {
+        return reviewMetadataLayout;
+    }
+
+    /**
+     * Sets the layout of the review metadata, recorded in the index header for the readers. The default,
+     * ROWS, keeps the review_metadata_index file of earlier indexes. COLUMNS writes other files instead,
+     * which makes the metadata several times smaller and lets scans of a single field read only its column.
+     *
+     * @param reviewMetadataLayout new review metadata layout.
+     */
+    public void setReviewMetadataLayout(ReviewMetadataLayout reviewMetadataLayout) {
+        this.reviewMetadataLayout = reviewMetadataLayout;
+    }
+
+    /**
+     * @return true if inputs that fit the memory budget are inverted in memory.
+     */
+    public boolean getInMemoryInversion() {
+        return inMemoryInversion;
+    }
+
+    /**
+     * Sets whether inputs whose pairs are estimated to fit the memory budget are inverted in memory,
+     * larger inputs are always sorted externally.
+     *
+     * @param inMemoryInversion false to always sort externally.
+     */
+    public void setInMemoryInversion(boolean inMemoryInversion) {
+        this.inMemoryInversion = inMemoryInversion;
+    }
+
+    /**
+     * @return the memory budget of the build, in bytes.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the memory budget of the build, from which the sizes of the pairs run buffers and the
+     * review metadata batches are derived. It is capped by the maximum heap size.
+     *
+     * @param memoryBudget new budget in bytes.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("memoryBudget must be positive");
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return the directory in which the temporary files of the build are created.
+     */
+    public String getTempDir() {
+        return tempDir;
+    }
+
+    /**
+     * Sets the directory in which the temporary files of the build are created, each build uses a new
+     * subdirectory of it.
+     *
+     * @param tempDir new temporary directory.
+     */
+    public void setTempDir(String tempDir) {
+        this.tempDir = tempDir;
+    }
+}
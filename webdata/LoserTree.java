@@ -0,0 +1,85 @@
+package webdata;
+
+import java.io.IOException;
+
+/**
+ * LoserTree class.
+ * A tournament tree merging sorted runs. Each inner node keeps the run that lost the match played there,
+ * so replacing the winner replays only the matches on the path from its leaf to the root, one comparison
+ * per level, over the current pairs kept in a primitive array.
+ */
+class LoserTree {
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final RunReader[] runs;
+    private final long[] heads;
+    private final int[] tree;
+    private final int k;
+
+    /**
+     * LoserTree constructor, reads the first pair of every run and plays the initial tournament.
+     *
+     * @param runs sorted runs to merge.
+     * @throws IOException
+     */
+    LoserTree(RunReader[] runs) throws IOException {
+        this.runs = runs;
+        this.k = runs.length;
+        this.heads = new long[k];
+        this.tree = new int[Math.max(k, 1)];
+
+        for (int i = 0; i < k; i++) {
+            heads[i] = runs[i].next();
+        }
+        // winners of the matches, leaves are nodes k to 2k-1
+        int[] winners = new int[2 * k];
+        for (int i = 0; i < k; i++) {
+            winners[k + i] = i;
+        }
+        for (int node = k - 1; node > 0; node--) {
+            int a = winners[2 * node];
+            int b = winners[2 * node + 1];
+            boolean aWins = beats(a, b);
+            winners[node] = aWins ? a : b;
+            tree[node] = aWins ? b : a;
+        }
+        tree[0] = k > 1 ? winners[1] : 0;
+    }
+
+    /**
+     * Returns the smallest pair of all runs and advances its run.
+     *
+     * @return smallest packed pair, or RunReader.END if all runs are exhausted.
+     * @throws IOException
+     */
+    long next() throws IOException {
+        if (k == 0) {
+            return RunReader.END;
+        }
+        int winner = tree[0];
+        long pair = heads[winner];
+        if (pair == RunReader.END) {
+            return pair;
+        }
+        heads[winner] = runs[winner].next();
+
+        for (int node = (winner + k) >> 1; node > 0; node >>= 1) {
+            if (beats(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+        return pair;
+    }
+
+    /**
+     * Returns true if the current pair of run a comes before the current pair of run b.
+     */
+    private boolean beats(int a, int b) {
+        return heads[a] < heads[b] || (heads[a] == heads[b] && a < b);
+    }
+}
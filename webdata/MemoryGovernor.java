@@ -0,0 +1,63 @@
+package webdata;
+
+/**
+ * MemoryGovernor class.
+ * Splits the memory budget of a build between its large buffers: the pairs run buffers, the review
+ * metadata batches, and the docIds lists of the in memory inversion. The budget is capped by the
+ * maximum heap size. The run buffers share also holds the scratch array Arrays.parallelSort allocates,
+ * as large as the buffer it sorts, for the one buffer of every RunWriter sorted at a time. An in memory
+ * inversion has no run buffers, so it only takes the in memory share.
+ */
+class MemoryGovernor {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final int RUN_BUFFERS_SHARE = 4;     // 1/4 of the budget
+    private static final int BATCH_SHARE = 16;          // 1/16 of the budget
+    private static final int IN_MEMORY_SHARE = 2;       // 1/2 of the budget
+    private static final int REVIEW_BATCH_BYTES = 128;  // boxed metadata of one review
+    private static final int RUN_PAIR_BYTES = Long.BYTES + Long.BYTES / RunWriter.NUM_BUFFERS; // and sort scratch
+    private static final int MIN_RUN_PAIRS = 1 << 16;
+    private static final int MAX_RUN_PAIRS = 1 << 30;
+    private static final int MIN_BATCH_SIZE = 1000;
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final long budget;
+
+    /**
+     * MemoryGovernor constructor.
+     *
+     * @param memoryBudget memory budget of the build, in bytes.
+     */
+    MemoryGovernor(long memoryBudget) {
+        this.budget = Math.min(memoryBudget, Runtime.getRuntime().maxMemory());
+    }
+
+    /**
+     * @return the number of pairs in all run buffers together.
+     */
+    int getRunPairs() {
+        return (int) clamp(budget / RUN_BUFFERS_SHARE / RUN_PAIR_BYTES, MIN_RUN_PAIRS, MAX_RUN_PAIRS);
+    }
+
+    /**
+     * @return the number of reviews whose metadata is held before it is written.
+     */
+    int getBatchSize() {
+        return (int) clamp(budget / BATCH_SHARE / REVIEW_BATCH_BYTES, MIN_BATCH_SIZE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the memory available for the docIds lists of the in memory inversion, in bytes.
+     */
+    long getInMemoryBudget() {
+        return budget / IN_MEMORY_SHARE;
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
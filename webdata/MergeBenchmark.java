@@ -0,0 +1,174 @@
+package webdata;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * MergeBenchmark class.
+ * Times the merge of sorted runs through the LoserTree over RunReaders, as ExternalSort merges them,
+ * against the PriorityQueue merge it replaced, which read every run through a DataInputStream and
+ * allocated an entry per pair. Both merge the same RAW runs of random pairs, at 64, 256 and 1024 runs,
+ * and must produce the same pairs.
+ * Usage: java webdata.MergeBenchmark [totalPairs] [repetitions]
+ */
+class MergeBenchmark {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final int[] NUM_RUNS = {64, 256, 1024};
+    private static final int NUM_TERMS = 1 << 20;
+    private static final int READ_BUFFER_PAIRS = 1 << 22;   // all read blocks together, as ExternalSort
+    private static final int MIN_READ_BLOCK_PAIRS = 1 << 10;
+    private static final int MAX_READ_BLOCK_PAIRS = 1 << 17;
+
+    /**
+     * A pair of the reference merge, with the run it was read from.
+     */
+    private static class Entry implements Comparable<Entry> {
+        final int termId;
+        final int docId;
+        final int run;
+
+        Entry(int termId, int docId, int run) {
+            this.termId = termId;
+            this.docId = docId;
+            this.run = run;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (termId != other.termId) {
+                return Integer.compare(termId, other.termId);
+            }
+            return Integer.compare(docId, other.docId);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long totalPairs = args.length > 0 ? Long.parseLong(args[0]) : 1 << 24;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        for (int numRuns : NUM_RUNS) {
+            File dir = Files.createTempDirectory("MergeBenchmark").toFile();
+            try {
+                File[] runs = writeRuns(dir, numRuns, (int) (totalPairs / numRuns), new Random(numRuns));
+                long treeNanos = Long.MAX_VALUE, queueNanos = Long.MAX_VALUE;
+                for (int r = 0; r < repetitions; r++) {
+                    long start = System.nanoTime();
+                    long treeChecksum = mergeLoserTree(runs);
+                    treeNanos = Math.min(treeNanos, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    long queueChecksum = mergePriorityQueue(runs);
+                    queueNanos = Math.min(queueNanos, System.nanoTime() - start);
+
+                    if (treeChecksum != queueChecksum) {
+                        throw new IllegalStateException("merges differ at " + numRuns + " runs");
+                    }
+                }
+                long pairs = numRuns * (totalPairs / numRuns);
+                System.out.printf("%5d runs: loser tree %.2fs (%.1f M pairs/s), priority queue %.2fs "
+                                + "(%.1f M pairs/s), speedup %.2fx%n",
+                        numRuns, treeNanos * 1e-9, pairs * 1e3 / treeNanos,
+                        queueNanos * 1e-9, pairs * 1e3 / queueNanos, queueNanos / (double) treeNanos);
+            } finally {
+                Utils.deleteDirectory(dir.getPath());
+            }
+        }
+    }
+
+    /**
+     * Writes runs of random sorted pairs in the RAW run format.
+     */
+    private static File[] writeRuns(File dir, int numRuns, int runPairs, Random random) throws IOException {
+        File[] runs = new File[numRuns];
+        long[] pairs = new long[runPairs];
+        for (int i = 0; i < numRuns; i++) {
+            for (int j = 0; j < runPairs; j++) {
+                pairs[j] = ExternalSort.pack(random.nextInt(NUM_TERMS), random.nextInt(Integer.MAX_VALUE));
+            }
+            Arrays.sort(pairs);
+            runs[i] = new File(dir, "run" + i);
+            RunOutput output = new RunOutput(runs[i].getPath(), IndexWriterOptions.RunFormat.RAW);
+            output.write(pairs, runPairs);
+            output.close();
+        }
+        return runs;
+    }
+
+    /**
+     * Merges the runs through a LoserTree, with read blocks sized as ExternalSort sizes them.
+     *
+     * @return order dependent checksum of the merged pairs.
+     */
+    private static long mergeLoserTree(File[] runs) throws IOException {
+        int blockPairs = Math.max(MIN_READ_BLOCK_PAIRS, Math.min(MAX_READ_BLOCK_PAIRS,
+                READ_BUFFER_PAIRS / runs.length));
+        RunReader[] readers = new RunReader[runs.length];
+        try {
+            for (int i = 0; i < runs.length; i++) {
+                readers[i] = new RunReader(runs[i], IndexWriterOptions.RunFormat.RAW, blockPairs, null, 0);
+            }
+            LoserTree tree = new LoserTree(readers);
+            long checksum = 0;
+            long pair;
+            while ((pair = tree.next()) != RunReader.END) {
+                checksum = checksum * 31 + pair;
+            }
+            return checksum;
+        } finally {
+            for (RunReader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the runs through a PriorityQueue of entries, as ExternalSort did before the LoserTree.
+     *
+     * @return order dependent checksum of the merged pairs.
+     */
+    private static long mergePriorityQueue(File[] runs) throws IOException {
+        DataInputStream[] inputs = new DataInputStream[runs.length];
+        PriorityQueue<Entry> queue = new PriorityQueue<>(runs.length);
+        try {
+            for (int i = 0; i < runs.length; i++) {
+                inputs[i] = new DataInputStream(new BufferedInputStream(new FileInputStream(runs[i])));
+                addNextEntry(inputs, i, queue);
+            }
+            long checksum = 0;
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                checksum = checksum * 31 + ExternalSort.pack(entry.termId, entry.docId);
+                addNextEntry(inputs, entry.run, queue);
+            }
+            return checksum;
+        } finally {
+            for (DataInputStream input : inputs) {
+                if (input != null) {
+                    input.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the next pair of a run to the queue, unless the run is exhausted.
+     */
+    private static void addNextEntry(DataInputStream[] inputs, int run, PriorityQueue<Entry> queue)
+            throws IOException {
+        try {
+            int termId = inputs[run].readInt();
+            int docId = inputs[run].readInt();
+            queue.add(new Entry(termId, docId, run));
+        } catch (EOFException e) {
+            // run exhausted
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package webdata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * PForCodec class.
+ * Patched frame of reference: the gaps and then the frequencies of a block are each written as a
+ * frame of fixed width values, followed by the exceptions that do not fit the width.
+ * A frame is its bit width, its number of exceptions, the low bits of all values packed most
+ * significant bit first, and for every exception its index and the rest of its bits as a variable
+ * byte code. The width is chosen to minimize the frame size.
+ */
+class PForCodec implements PostingsCodec {
+
+    private static final int MAX_FRAME_BYTES = 2 + BLOCK_SIZE * Integer.BYTES + BLOCK_SIZE * 6;
+
+    private final byte[] buffer = new byte[MAX_FRAME_BYTES];
+
+    @Override
+    public void encodeBlock(int[] gaps, int[] freqs, int n, OutputStream out) throws IOException {
+        out.write(buffer, 0, encodeFrame(gaps, n));
+        out.write(buffer, 0, encodeFrame(freqs, n));
+    }
+
+    @Override
+    public int decodeBlock(byte[] bytes, int offset, int n, int[] gaps, int[] freqs) {
+        return decodeFrame(bytes, decodeFrame(bytes, offset, n, gaps), n, freqs);
+    }
+
+    /**
+     * Encodes one frame into the buffer.
+     *
+     * @return frame size in bytes.
+     */
+    private int encodeFrame(int[] values, int n) {
+        int[] widthCounts = new int[Integer.SIZE + 1];
+        for (int i = 0; i < n; i++) {
+            widthCounts[Integer.SIZE - Integer.numberOfLeadingZeros(values[i])]++;
+        }
+        int width = Integer.SIZE, bestSize = Integer.MAX_VALUE;
+        int exceptions = 0;
+        for (int b = Integer.SIZE; b >= 0; b--) {
+            // frames wider than b bits need up to 5 bytes for the rest of their bits, plus their index
+            int size = (n * b + 7) / 8 + exceptions * (1 + (Integer.SIZE - b + 6) / 7);
+            if (size < bestSize && exceptions < 256) {
+                bestSize = size;
+                width = b;
+            }
+            exceptions += widthCounts[b];
+        }
+
+        int pos = 2;
+        long acc = 0;
+        int accBits = 0;
+        int numExceptions = 0;
+        long mask = (1L << width) - 1;
+        for (int i = 0; i < n; i++) {
+            acc = (acc << width) | (values[i] & mask);
+            accBits += width;
+            while (accBits >= Byte.SIZE) {
+                accBits -= Byte.SIZE;
+                buffer[pos++] = (byte) (acc >>> accBits);
+            }
+        }
+        if (accBits > 0) {
+            buffer[pos++] = (byte) (acc << (Byte.SIZE - accBits));
+        }
+        for (int i = 0; i < n; i++) {
+            int rest = width == Integer.SIZE ? 0 : values[i] >>> width;
+            if (rest != 0) {
+                buffer[pos++] = (byte) i;
+                while ((rest & ~0x7F) != 0) {
+                    buffer[pos++] = (byte) ((rest & 0x7F) | 0x80);
+                    rest >>>= 7;
+                }
+                buffer[pos++] = (byte) rest;
+                numExceptions++;
+            }
+        }
+        buffer[0] = (byte) width;
+        buffer[1] = (byte) numExceptions;
+        return pos;
+    }
+
+    /**
+     * Decodes one frame.
+     *
+     * @return offset after the frame.
+     */
+    private static int decodeFrame(byte[] bytes, int offset, int n, int[] values) {
+        int width = bytes[offset];
+        int numExceptions = bytes[offset + 1] & 0xFF;
+        int pos = offset + 2;
+        long acc = 0;
+        int accBits = 0;
+        int mask = (int) ((1L << width) - 1);
+        for (int i = 0; i < n; i++) {
+            while (accBits < width) {
+                acc = (acc << Byte.SIZE) | (bytes[pos++] & 0xFF);
+                accBits += Byte.SIZE;
+            }
+            accBits -= width;
+            values[i] = (int) (acc >>> accBits) & mask;
+        }
+        for (int e = 0; e < numExceptions; e++) {
+            int i = bytes[pos++] & 0xFF;
+            int rest = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[pos++];
+                rest |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            values[i] |= rest << width;
+        }
+        return pos;
+    }
+}
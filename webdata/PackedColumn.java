@@ -0,0 +1,117 @@
+package webdata;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * PackedColumn class.
+ * A column of review metadata ints, each stored as its difference from the minimum value of the column
+ * in the minimum number of bits that holds the difference from the maximum, packed big endian.
+ * The file holds the minimum int and the width byte, then the packed values, then 8 zero bytes so any
+ * value is read with a single long read. A column of equal values has width 0 and no packed bits.
+ * The column is memory mapped and only read with absolute reads, so it may be used by concurrent threads.
+ */
+class PackedColumn {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final int DATA_OFFSET = Integer.BYTES + 1;   // minimum and width
+    private static final int PADDING = Long.BYTES;
+
+    /**
+     * Writes a packed column, one value at a time.
+     */
+    static class Writer {
+        private final DataOutputStream out;
+        private final long min;
+        private final int width;
+        private long bits = 0;      // pending bits, in the low bitCount bits
+        private int bitCount = 0;
+
+        /**
+         * Writer constructor.
+         *
+         * @param path column file path.
+         * @param min  minimum value of the column.
+         * @param max  maximum value of the column.
+         * @throws IOException
+         */
+        Writer(String path, int min, int max) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+            this.min = min;
+            this.width = 64 - Long.numberOfLeadingZeros((long) max - min);
+            out.writeInt(min);
+            out.writeByte(width);
+        }
+
+        /**
+         * Appends a value, in [min, max], to the column.
+         *
+         * @param value column value.
+         * @throws IOException
+         */
+        void add(int value) throws IOException {
+            if (width == 0) {
+                return;
+            }
+            bits = (bits << width) | (value - min);
+            bitCount += width;
+            while (bitCount >= Byte.SIZE) {
+                bitCount -= Byte.SIZE;
+                out.writeByte((int) (bits >>> bitCount));
+            }
+            bits &= (1L << bitCount) - 1;
+        }
+
+        /**
+         * Writes the last pending bits and the padding, and closes the column file.
+         *
+         * @throws IOException
+         */
+        void close() throws IOException {
+            if (bitCount > 0) {
+                out.writeByte((int) (bits << (Byte.SIZE - bitCount)));
+            }
+            out.write(new byte[PADDING]);
+            out.close();
+        }
+    }
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final ByteBuffer column;
+    private final int min;
+    private final int width;
+    private final long mask;
+
+    /**
+     * PackedColumn constructor, maps the column file.
+     *
+     * @param path column file path.
+     * @throws IOException
+     */
+    PackedColumn(String path) throws IOException {
+        this.column = Utils.map(path);
+        this.min = column.getInt(0);
+        this.width = column.get(Integer.BYTES);
+        this.mask = (1L << width) - 1;
+    }
+
+    /**
+     * Returns the value at the given index of the column.
+     *
+     * @param index value index, not checked.
+     * @return column value.
+     */
+    int get(int index) {
+        if (width == 0) {
+            return min;
+        }
+        long bitOffset = (long) index * width;
+        long word = column.getLong(DATA_OFFSET + (int) (bitOffset >>> 3));
+        int shift = Long.SIZE - (int) (bitOffset & 7) - width;
+        return (int) ((word >>> shift) & mask) + min;
+    }
+}
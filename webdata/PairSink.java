@@ -0,0 +1,39 @@
+package webdata;
+
+import java.io.IOException;
+
+/**
+ * PairSink interface.
+ * Receives sorted packed (termId, docId) pairs, in bulk.
+ */
+interface PairSink {
+
+    /**
+     * Creates the sink receiving the pairs of a final merge segment.
+     */
+    interface Factory {
+
+        /**
+         * @param segment segment index, segments hold increasing termId ranges.
+         * @return sink for the pairs of the segment.
+         * @throws IOException
+         */
+        PairSink create(int segment) throws IOException;
+    }
+
+    /**
+     * Receives the next sorted pairs.
+     *
+     * @param pairs packed termID,docID pairs.
+     * @param n     number of pairs.
+     * @throws IOException
+     */
+    void write(long[] pairs, int n) throws IOException;
+
+    /**
+     * Ends the pairs.
+     *
+     * @throws IOException
+     */
+    void close() throws IOException;
+}
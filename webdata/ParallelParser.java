@@ -0,0 +1,230 @@
+package webdata;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * ParallelParser class.
+ * Parses an uncompressed input file on several threads. The file is split into byte ranges of whole reviews,
+ * each range is parsed in single pass mode by its own Parser, with its own terms table and pairs buffer.
+ * The chunks' review ids are made global by a prefix sum over the chunks' review counts.
+ */
+class ParallelParser {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final byte[] REVIEW_START = "\nproduct/productId:".getBytes(StandardCharsets.US_ASCII);
+    private static final int SEARCH_WINDOW = 1 << 16;
+    private static final String REVIEW_INDEX_TMP = "reviewMetadata_tmp";
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final String filePath;
+    private final ExternalSort sorter;
+    private final int numThreads;
+    private final int batchSize;
+
+    /**
+     * ParallelParser constructor.
+     *
+     * @param filepath   filepath to the uncompressed input review file.
+     * @param sorter     external sorter for the (termId, docId) pairs.
+     * @param numThreads number of parsing threads.
+     * @param batchSize  number of reviews whose metadata is held before it is written, split among chunks.
+     */
+    ParallelParser(String filepath, ExternalSort sorter, int numThreads, int batchSize) {
+        this.filePath = filepath;
+        this.sorter = sorter;
+        this.numThreads = numThreads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Parses the input file, writes the review metadata index to dir, and writes the runs of all chunks.
+     *
+     * @param dir directory to save the review metadata index in.
+     * @return Parser holding the merged terms and product ids.
+     * @throws IOException
+     */
+    Parser parse(String dir) throws IOException {
+        long[] boundaries = findBoundaries();
+        int numChunks = boundaries.length - 1;
+        int pairsCapacity = sorter.getRunPairs() / numChunks;
+        int chunkBatchSize = Math.max(1, batchSize / numChunks);
+        File[] reviewIndexParts = new File[numChunks];
+
+        ExecutorService executor = Executors.newFixedThreadPool(numChunks);
+        List<Future<Parser>> futures = new ArrayList<>();
+        for (int i = 0; i < numChunks; i++) {
+            int chunk = i;
+            reviewIndexParts[i] = new File(dir + "/" + REVIEW_INDEX_TMP + i);
+            futures.add(executor.submit(() -> parseChunk(chunk, boundaries[chunk], boundaries[chunk + 1],
+                    pairsCapacity, chunkBatchSize, reviewIndexParts[chunk])));
+        }
+        executor.shutdown();
+
+        Parser[] chunks = new Parser[numChunks];
+        try {
+            for (int i = 0; i < numChunks; i++) {
+                chunks[i] = futures.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            throw Utils.rethrow(e.getCause());
+        }
+        ReviewIndexWriter.concatenate(reviewIndexParts, dir);
+
+        Parser merged = new Parser(sorter);
+        int[][] chunkTermIdMaps = new int[numChunks][];
+        for (int i = 0; i < numChunks; i++) {
+            chunkTermIdMaps[i] = merged.addChunk(chunks[i]);
+        }
+        merged.mapChunks(chunks, chunkTermIdMaps);
+        return merged;
+    }
+
+    /**
+     * Parses one chunk of the input file, writing its review metadata to a temporary file.
+     *
+     * @param chunk         chunk index.
+     * @param start         start of the chunk in the file.
+     * @param end           end of the chunk in the file.
+     * @param pairsCapacity number of pairs held in memory by the chunk's pairs buffers.
+     * @param batchSize     number of reviews whose metadata is held before it is written.
+     * @param reviewIndex   temporary review metadata file.
+     * @return chunk Parser.
+     * @throws IOException
+     */
+    private Parser parseChunk(int chunk, long start, long end, int pairsCapacity, int batchSize,
+                              File reviewIndex) throws IOException {
+        RunWriter runWriter = null;
+        ReviewIndexWriter reviewIndexWriter = null;
+        try (FileInputStream input = new FileInputStream(filePath)) {
+            input.getChannel().position(start);
+            runWriter = new RunWriter(sorter, pairsCapacity);
+            Parser parser = new Parser(new BoundedInputStream(input, end - start), sorter, chunk, runWriter);
+            parser.setBatchSize(batchSize);
+            reviewIndexWriter = new ReviewIndexWriter(parser, reviewIndex);
+
+            boolean parsing = true;
+            while (parsing) {
+                parsing = parser.parseFile();
+                reviewIndexWriter.write();
+            }
+            parser.finishChunk();
+            parser.clearReviewIndexStructs();
+            return parser;
+        } finally {
+            if (runWriter != null) {
+                runWriter.abort();
+            }
+            if (reviewIndexWriter != null) {
+                reviewIndexWriter.close();
+            }
+        }
+    }
+
+    /**
+     * Splits the input file into numThreads byte ranges, each starting at the beginning of a review.
+     *
+     * @return ranges boundaries, range i is [boundaries[i], boundaries[i + 1]).
+     * @throws IOException
+     */
+    private long[] findBoundaries() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+            long length = file.length();
+            long[] boundaries = new long[numThreads + 1];
+            for (int i = 1; i < numThreads; i++) {
+                long approx = Math.max(boundaries[i - 1], length * i / numThreads);
+                boundaries[i] = nextReviewStart(file, approx);
+            }
+            boundaries[numThreads] = length;
+            return boundaries;
+        }
+    }
+
+    /**
+     * Returns the position of the first review starting at or after pos, or the file length if there is none.
+     *
+     * @param file input file.
+     * @param pos  position to search from.
+     * @throws IOException
+     */
+    private static long nextReviewStart(RandomAccessFile file, long pos) throws IOException {
+        if (pos == 0) {
+            return 0;
+        }
+        byte[] window = new byte[SEARCH_WINDOW];
+        long windowStart = pos - 1;  // the review line must follow a line feed
+
+        while (windowStart < file.length()) {
+            file.seek(windowStart);
+            int n = file.read(window);
+            for (int i = 0; i + REVIEW_START.length <= n; i++) {
+                int j = 0;
+                while (j < REVIEW_START.length && window[i + j] == REVIEW_START[j]) {
+                    j++;
+                }
+                if (j == REVIEW_START.length) {
+                    return windowStart + i + 1;
+                }
+            }
+            if (n < SEARCH_WINDOW) {
+                break;
+            }
+            windowStart += n - REVIEW_START.length + 1;
+        }
+        return file.length();
+    }
+
+    /**
+     * An input stream reading at most a given number of bytes from another stream.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        /**
+         * BoundedInputStream constructor.
+         *
+         * @param in        underlying input stream.
+         * @param remaining number of bytes to read.
+         */
+        BoundedInputStream(InputStream in, long remaining) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
@@ -2,8 +2,6 @@ package webdata;
 
 import java.io.*;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -13,203 +11,236 @@ class Parser {
     /**
      * ---- CONSTANTS ----
      **/
-    private static final String PRODUCT_ID_PATTERN = "(product/productId: )(.*)";
-    private static final String HELPFULNESS_PATTERN = "(review/helpfulness: )(.*)";
-    private static final String SCORE_PATTERN = "(review/score: )(.*)";
-    private static final String TEXT_PATTERN = "(review/text: )(.*)";
-    private static final String NON_ALPHANUMERIC = "[^a-zA-Z0-9]++";
-    private static final int NUM_PATTERNS = 4;
-    private static final int PRODUCT_ID = 0;
-    private static final int HELPFULNESS = 1;
-    private static final int SCORE = 2;
-    private static final int TEXT = 3;
-    private static final int CONTENT_GROUP = 2;
-    private static final int NUMERATOR = 0;
-    private static final int DENOMINATOR = 1;
+    private static final int NUM_PATTERNS = ReviewScanner.NUM_FIELDS;
     private static final int BATCH_SIZE = 1000000;
+    private static final int INPUT_BUFFER_SIZE = 1 << 16;
 
     /**
-     * ---- PATTERNS ----
+     * ---- TABLE (TERM, PROVISIONAL TERM-ID) AND MAP (PROVISIONAL TERM-ID, TERM-ID) ----
      **/
-    private static Pattern productIdPattern = Pattern.compile(PRODUCT_ID_PATTERN);
-    private static Pattern helpfulnessPattern = Pattern.compile(HELPFULNESS_PATTERN);
-    private static Pattern scorePattern = Pattern.compile(SCORE_PATTERN);
-    private static Pattern textPattern = Pattern.compile(TEXT_PATTERN);
-
-    /**
-     * ---- MAP (TERM, TERM-ID) ----
-     **/
-    private Map<String, Integer> termTermIdMap = new HashMap<>();
+    private TermTable termTable = new TermTable();
+    private int[] termIdMap;
 
     /**
      * ---- FIELDS ----
      **/
-    private BufferedReader reader;
+    private ReviewScanner scanner;
     private ExternalSort sorter;
+    private RunWriter runWriter = null;
     private String filePath;
+    private boolean singlePass;
+    private int runGroup = 0;
+    private int batchSize = BATCH_SIZE;
+    private int pairsCapacity;
     private int matcherCounter = 0;
     private int reviewId = 0;
     private int numTokens = 0;
     private int pairIdx = 0;
 
-    private HashSet<String> terms = new HashSet<>();
     private ArrayList<Integer> tokensCounters = new ArrayList<>();
     private ArrayList<String> productIds = new ArrayList<>();
     private ArrayList<webdata.Pair<Integer, Integer>> helpfulness = new ArrayList<>();
     private ArrayList<Integer> scores = new ArrayList<>();
 
-    private int[][] termIdDocIdPairs = null;
+    private long[] termIdDocIdPairs = null;
     private String[] sortedTerms;
 
     /**
      * Parser Constructor.
      *
-     * @param filepath filepath to the input review file.
+     * @param filepath   filepath to the input review file.
+     * @param sorter     external sorter for the (termId, docId) pairs.
+     * @param singlePass if true, pairs are collected while parsing the file with provisional termIds.
      */
-    Parser(String filepath, ExternalSort sorter) {
+    Parser(String filepath, ExternalSort sorter, boolean singlePass) {
         try {
-            if (filepath.endsWith(".gz")) {
-                GZIPInputStream gzip = new GZIPInputStream(new FileInputStream(filepath));
-                reader = new BufferedReader(new InputStreamReader(gzip));
-            } else {
-                reader = new BufferedReader(new FileReader(filepath));
-            }
+            scanner = new ReviewScanner(openInput(filepath));
             this.filePath = filepath;
             this.sorter = sorter;
+            this.singlePass = singlePass;
+            if (singlePass) {
+                runWriter = new RunWriter(sorter, sorter.getRunPairs());
+                pairsCapacity = runWriter.getPairsCapacity();
+                termIdDocIdPairs = runWriter.takeBuffer();
+            }
         } catch (Exception e) {
-            reader = null;
+            scanner = null;
         }
     }
 
     /**
-     * Returns the next line in the input file, returns null if EOF is reached.
+     * Parser Constructor for one chunk of the input, parsed in single pass mode.
+     * Review ids and provisional termIds are local to the chunk.
+     *
+     * @param input     input stream of whole reviews.
+     * @param sorter    external sorter for the (termId, docId) pairs.
+     * @param runGroup  run group of the chunk's runs in the sorter.
+     * @param runWriter run writer providing the pairs buffers.
+     */
+    Parser(InputStream input, ExternalSort sorter, int runGroup, RunWriter runWriter) throws IOException {
+        this.scanner = new ReviewScanner(input);
+        this.sorter = sorter;
+        this.singlePass = true;
+        this.runGroup = runGroup;
+        this.runWriter = runWriter;
+        this.pairsCapacity = runWriter.getPairsCapacity();
+        this.termIdDocIdPairs = runWriter.takeBuffer();
+    }
+
+    /**
+     * Parser Constructor for the terms and product ids merged from parsed chunks.
+     *
+     * @param sorter external sorter for the (termId, docId) pairs.
+     */
+    Parser(ExternalSort sorter) {
+        this.sorter = sorter;
+    }
+
+    /**
+     * Sets the number of reviews whose metadata is held until parseFile returns.
      *
-     * @return String line
+     * @param batchSize number of reviews in a batch.
      */
-    private String readLine() {
+    void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Opens the input file, decompressing it if it is a gzip file.
+     *
+     * @param filepath filepath to the input review file.
+     * @return input stream.
+     * @throws IOException
+     */
+    static InputStream openInput(String filepath) throws IOException {
+        if (filepath.endsWith(".gz")) {
+            return new GZIPInputStream(new FileInputStream(filepath), INPUT_BUFFER_SIZE);
+        }
+        return new FileInputStream(filepath);
+    }
+
+    /**
+     * Advances to the next line in the input file, returns false if EOF is reached.
+     *
+     * @return true if a line was read.
+     */
+    private boolean readLine() {
         try {
-            return reader.readLine();
+            return scanner != null && scanner.nextLine();
         } catch (Exception e) {
-            return null;
+            return false;
         }
     }
 
     // ---- Read documents for ReviewIndex and ProductIndex, creates (term,termId) map in memory ----
 
     /**
-     * Returns the next pattern for the parser to look for in the input file,
+     * Returns true if the current line is the next field for the parser to look for in the input file,
      * according to the reviews structure.
      *
-     * @return Pattern next pattern to look for.
-     */
-    private Pattern nextPattern() {
-        switch (matcherCounter % NUM_PATTERNS) {
-        case PRODUCT_ID:
-            return Parser.productIdPattern;
-        case HELPFULNESS:
-            return Parser.helpfulnessPattern;
-        case SCORE:
-            return Parser.scorePattern;
-        default:
-            return Parser.textPattern;
-        }
+     * @return true if the current line is the next field.
+     */
+    private boolean matchesNextField() {
+        return scanner.isField(matcherCounter % NUM_PATTERNS);
     }
 
     /**
      * Adds review id to productIds array.
-     *
-     * @param str id string
      */
-    private void addId(String str) {
+    private void addId() {
         reviewId++;
-        productIds.add(str);
+        productIds.add(scanner.content());
     }
 
     /**
      * Adds helpfulness to helpfulness array.
-     *
-     * @param str helpfulness string
      */
-    private void addHelpfulness(String str) {
-        String[] helpfulness = str.split(NON_ALPHANUMERIC);
-        int numerator = Integer.parseInt(helpfulness[NUMERATOR]);
-        int denominator = Integer.parseInt(helpfulness[DENOMINATOR]);
+    private void addHelpfulness() {
+        scanner.nextToken();
+        int numerator = scanner.tokenValue();
+        scanner.nextToken();
+        int denominator = scanner.tokenValue();
         this.helpfulness.add(new Pair<>(numerator, denominator));
     }
 
     /**
      * Adds score to score array.
-     *
-     * @param str score string
      */
-    private void addScore(String str) {
-        int score = Integer.parseInt(str.split(NON_ALPHANUMERIC)[0]);
-        scores.add(score);
+    private void addScore() {
+        scanner.nextToken();
+        scores.add(scanner.tokenValue());
     }
 
     /**
-     * Returns a sorted set of terms containing all terms from the text string.
-     *
-     * @param str text string
-     * @return Terms sorted set
+     * Adds all terms from the review text to the terms table.
+     * In single pass mode, also adds a (provisional termId, docId) pair for each token.
      */
-    private void addTerms(String str) {
+    private void addTerms() throws IOException {
         int curTokenCounter = 0;
 
-        String[] tokens = str.split(NON_ALPHANUMERIC, 0);
-
-        for (String token : tokens) {
-            if (token.isEmpty()) continue;
-
-            terms.add(token.toLowerCase());
+        while (scanner.nextToken()) {
+            int provisionalId = termTable.add(scanner.tokenBuffer(), scanner.tokenOffset(), scanner.tokenLength());
             curTokenCounter++;
+
+            if (singlePass) {
+                if (isMemoryFull()) {
+                    flushProvisional();
+                }
+                termIdDocIdPairs[pairIdx++] = ExternalSort.pack(provisionalId, reviewId);
+                numTokens++;
+            }
         }
         this.tokensCounters.add(curTokenCounter);
     }
 
+    /**
+     * Writes the pairs buffer holding provisional termIds to disk, unless it is empty.
+     */
+    private void flushProvisional() throws IOException {
+        if (pairIdx == 0) {
+            return;
+        }
+        termIdDocIdPairs = runWriter.write(termIdDocIdPairs, pairIdx, termTable.snapshot(), runGroup);
+        pairIdx = 0;
+    }
+
     /**
      * Creates term to termId map in memory.
      */
     private void createTermToTermIdMap() {
-        sortedTerms = new String[terms.size()];
-        terms.toArray(sortedTerms);
-        terms = null;
-        Runtime.getRuntime().gc();
-        Arrays.parallelSort(sortedTerms);
-
-        int termId = 0;
-        for (String term : sortedTerms) {
-            termTermIdMap.put(term, termId++);
+        int[] sortedIds = termTable.sortedIds();
+        sortedTerms = new String[sortedIds.length];
+        termIdMap = new int[sortedIds.length];
+
+        for (int termId = 0; termId < sortedIds.length; termId++) {
+            sortedTerms[termId] = termTable.getTerm(sortedIds[termId]);
+            termIdMap[sortedIds[termId]] = termId;
         }
     }
 
     /**
      * Parse the input file.
      */
-    boolean parseFile() {
-        Matcher m;
-        String line, match;
+    boolean parseFile() throws IOException {
         int type;
         clearMetaData();
 
-        while ((line = readLine()) != null) {
-            m = nextPattern().matcher(line);
-            if (m.matches()) {
+        while (readLine()) {
+            if (matchesNextField()) {
                 type = matcherCounter % NUM_PATTERNS;
-                match = m.group(CONTENT_GROUP);
                 switch (type) {
-                case PRODUCT_ID:
-                    addId(match);
+                case ReviewScanner.PRODUCT_ID:
+                    addId();
                     break;
-                case HELPFULNESS:
-                    addHelpfulness(match);
+                case ReviewScanner.HELPFULNESS:
+                    addHelpfulness();
                     break;
-                case SCORE:
-                    addScore(match);
+                case ReviewScanner.SCORE:
+                    addScore();
                     break;
-                case TEXT:
-                    addTerms(match);
-                    if (reviewId % BATCH_SIZE == 0) {
+                case ReviewScanner.TEXT:
+                    addTerms();
+                    if (reviewId % batchSize == 0) {
                         matcherCounter++;
                         return true;
                     }
@@ -238,7 +269,6 @@ class Parser {
         tokensCounters = null;
         helpfulness = null;
         scores = null;
-        Runtime.getRuntime().gc();
     }
 
     /**
@@ -249,72 +279,131 @@ class Parser {
     private void resetParser() throws IOException {
         productIds = null;
         reviewId = 0;
-        if (filePath.endsWith(".gz")) {
-            GZIPInputStream gzip = new GZIPInputStream(new FileInputStream(filePath));
-            reader = new BufferedReader(new InputStreamReader(gzip));
-        } else {
-            reader = new BufferedReader(new FileReader(filePath));
-        }
+        scanner.close();
+        scanner = new ReviewScanner(openInput(filePath));
     }
 
     /**
      * @return True if the memory is full, else returns false.
      */
     private boolean isMemoryFull() {
-        return numTokens > 0 && numTokens % ExternalSort.NUM_PAIRS == 0;
+        return pairIdx == pairsCapacity;
     }
 
     /**
-     * Adds (tokens, posting lists) pair to the posting list HashMap for each token in the review text,
-     * or update an existing token's posting list. If the memory is full, flush data to disk.
-     *
-     * @param str text string
+     * Adds (termId, docId) pair to the pairs buffer for each token in the review text.
+     * If the memory is full, flush data to disk.
      */
-    private void addToPostingsList(String str) throws IOException {
-        String[] tokens = str.split(NON_ALPHANUMERIC, 0);
-
-        for (String token : tokens) {
+    private void addToPostingsList() throws IOException {
+        while (scanner.nextToken()) {
             // flush to disk
             if (isMemoryFull()) {
-                sorter.writeSorted(termIdDocIdPairs, pairIdx);
+                termIdDocIdPairs = runWriter.write(termIdDocIdPairs, pairIdx, null, runGroup);
                 pairIdx = 0;
             }
 
-            if (token.isEmpty()) continue;
+            int provisionalId = termTable.find(scanner.tokenBuffer(), scanner.tokenOffset(), scanner.tokenLength());
+            termIdDocIdPairs[pairIdx++] = ExternalSort.pack(termIdMap[provisionalId], reviewId);
 
-            String lower = token.toLowerCase();
-            termIdDocIdPairs[pairIdx][0] = termTermIdMap.get(lower);
-            termIdDocIdPairs[pairIdx][1] = reviewId;
-
-            pairIdx++;
             numTokens++;
         }
     }
 
     /**
      * Reads documents and writes (termId, docId) pairs to disk.
+     * In single pass mode the pairs were already collected by parseFile, so only the last pairs are
+     * written, and the sorter is given the map from provisional termIds to termIds.
      */
     void parsePostingsLists() throws IOException {
+        if (singlePass) {
+            finishChunk();
+            createTermToTermIdMap();
+            sorter.setRunGroupMapping(runGroup, termIdMap, 0);
+            return;
+        }
         createTermToTermIdMap();
         resetParser();
-        Matcher m;
-        String line, match;
-        termIdDocIdPairs = new int[ExternalSort.NUM_PAIRS][2];
-
-        while ((line = this.readLine()) != null) {
-            m = textPattern.matcher(line);
-
-            if (m.matches()) {
-                match = m.group(CONTENT_GROUP);
-                addToPostingsList(match);
-            } else if (productIdPattern.matcher(line).matches()) {
-                reviewId++;
+        runWriter = new RunWriter(sorter, sorter.getRunPairs());
+        try {
+            pairsCapacity = runWriter.getPairsCapacity();
+            termIdDocIdPairs = runWriter.takeBuffer();
+
+            while (readLine()) {
+                if (scanner.isField(ReviewScanner.TEXT)) {
+                    addToPostingsList();
+                } else if (scanner.isField(ReviewScanner.PRODUCT_ID)) {
+                    reviewId++;
+                }
+            }
+            scanner.close();
+            if (pairIdx > 0) {
+                runWriter.write(termIdDocIdPairs, pairIdx, null, runGroup);
             }
+            runWriter.close();
+            termIdDocIdPairs = null;
+        } finally {
+            runWriter.abort();
+        }
+    }
+
+    /**
+     * Stops the run writer of a parser that failed, see RunWriter.abort. Does nothing once the pairs
+     * are written.
+     */
+    void abort() {
+        if (runWriter != null) {
+            runWriter.abort();
         }
-        sorter.writeSorted(termIdDocIdPairs, pairIdx);
+    }
+
+    // ---- Parallel chunks ----
+
+    /**
+     * Writes the last pairs of a parsed chunk to disk.
+     */
+    void finishChunk() throws IOException {
+        scanner.close();
+        flushProvisional();
+        runWriter.close();
         termIdDocIdPairs = null;
     }
 
+    /**
+     * Adds the terms, product ids and counters of a parsed chunk, following the chunks added so far.
+     * The chunk's runs are mapped to the merged termIds and review ids once all chunks are added.
+     *
+     * @param chunk parsed chunk.
+     * @return map from the chunk's provisional termIds to the merged provisional termIds.
+     */
+    int[] addChunk(Parser chunk) {
+        productIds.addAll(chunk.productIds);
+        reviewId += chunk.reviewId;
+        numTokens += chunk.numTokens;
+        int[] chunkTermIdMap = termTable.addAll(chunk.termTable);
+        chunk.termTable = null;
+        chunk.productIds = null;
+        return chunkTermIdMap;
+    }
+
+    /**
+     * Creates the term to termId map of the merged chunks, and sets the map of each chunk's runs.
+     *
+     * @param chunks         parsed chunks, in input order.
+     * @param chunkTermIdMaps maps from each chunk's provisional termIds to the merged provisional termIds.
+     */
+    void mapChunks(Parser[] chunks, int[][] chunkTermIdMaps) {
+        createTermToTermIdMap();
+        int docIdOffset = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            int[] chunkMap = chunkTermIdMaps[i];
+            for (int j = 0; j < chunkMap.length; j++) {
+                chunkMap[j] = termIdMap[chunkMap[j]];
+            }
+            sorter.setRunGroupMapping(chunks[i].runGroup, chunkMap, docIdOffset);
+            docIdOffset += chunks[i].reviewId;
+        }
+    }
+
     // ---- getters ----
 
     /**
@@ -323,7 +412,7 @@ class Parser {
      * @return number of terms.
      */
     int getNumOfTerms() {
-        return termTermIdMap.size();
+        return termTable.size();
     }
 
     /**
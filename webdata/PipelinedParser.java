@@ -0,0 +1,176 @@
+package webdata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+/**
+ * PipelinedParser class.
+ * Parses the input file in a pipeline of stages, each on its own thread, connected by bounded queues:
+ * decompress (reads and gunzips the input into chunks), split (splits the chunks into lines and keeps
+ * only the review fields read by the Parser), tokenize (a single pass Parser, which also writes the review
+ * and product indices) and spill (sorts and writes the full pairs buffers as runs). Decompression and disk
+ * I/O then overlap with tokenizing instead of running in series.
+ */
+class PipelinedParser {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final int NUM_STAGES = 4;
+    private static final String[] STAGE_NAMES = {"decompress", "split", "tokenize", "spill"};
+    private static final int DECOMPRESS = 0;
+    private static final int SPLIT = 1;
+    private static final int TOKENIZE = 2;
+    private static final int SPILL = 3;
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final String filePath;
+    private final ExternalSort sorter;
+    private final int batchSize;
+    private final long[] busyNanos = new long[NUM_STAGES];
+    private Parser parser;
+
+    /**
+     * PipelinedParser constructor.
+     *
+     * @param filepath  filepath to the input review file.
+     * @param sorter    external sorter for the (termId, docId) pairs.
+     * @param batchSize number of reviews whose metadata is held before it is written.
+     */
+    PipelinedParser(String filepath, ExternalSort sorter, int batchSize) {
+        this.filePath = filepath;
+        this.sorter = sorter;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Parses the input file, writes the review and product indices to dir, and writes the pairs runs.
+     *
+     * @param dir index directory.
+     * @return the Parser holding the terms.
+     * @throws IOException
+     */
+    Parser parse(String dir) throws IOException {
+        BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<byte[]> lines = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        RunWriter runWriter = new RunWriter(sorter, sorter.getRunPairs());
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(NUM_STAGES - 1);
+        CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+        stages.submit(() -> decompress(chunks));
+        stages.submit(() -> split(chunks, lines));
+        stages.submit(() -> tokenize(lines, runWriter, dir));
+
+        try {
+            for (int i = 0; i < NUM_STAGES - 1; i++) {
+                stages.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw Utils.rethrow(e.getCause());     // the first stage to fail, the others wait on it
+        } finally {
+            executor.shutdownNow();
+            runWriter.abort();
+        }
+        busyNanos[SPILL] = runWriter.getBusyNanos();
+        printReport(System.nanoTime() - start);
+        return parser;
+    }
+
+    /**
+     * Decompress stage, reads the input file into chunks.
+     */
+    private Void decompress(BlockingQueue<byte[]> chunks) throws IOException, InterruptedException {
+        try (InputStream input = Parser.openInput(filePath)) {
+            while (true) {
+                long start = System.nanoTime();
+                byte[] chunk = new byte[CHUNK_SIZE];
+                int n = 0, read;
+                while (n < CHUNK_SIZE && (read = input.read(chunk, n, CHUNK_SIZE - n)) > 0) {
+                    n += read;
+                }
+                busyNanos[DECOMPRESS] += System.nanoTime() - start;
+                if (n == 0) {
+                    break;
+                }
+                chunks.put(n == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, n));
+            }
+        }
+        chunks.put(QueueInputStream.END);
+        return null;
+    }
+
+    /**
+     * Split stage, splits the chunks into lines and passes on the review fields lines.
+     */
+    private Void split(BlockingQueue<byte[]> chunks, BlockingQueue<byte[]> lines)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime(), putNanos = 0, putStart;
+        QueueInputStream input = new QueueInputStream(chunks);
+        ReviewScanner scanner = new ReviewScanner(input);
+        byte[] batch = new byte[CHUNK_SIZE];
+        int pos = 0;
+
+        while (scanner.nextLine()) {
+            if (!scanner.isReviewField()) {
+                continue;
+            }
+            if (pos + scanner.lineLength() > batch.length) {
+                putStart = System.nanoTime();
+                lines.put(Arrays.copyOf(batch, pos));
+                putNanos += System.nanoTime() - putStart;
+                batch = new byte[Math.max(CHUNK_SIZE, scanner.lineLength())];
+                pos = 0;
+            }
+            pos = scanner.copyLine(batch, pos);
+        }
+        putStart = System.nanoTime();
+        if (pos > 0) {
+            lines.put(Arrays.copyOf(batch, pos));
+        }
+        lines.put(QueueInputStream.END);
+        putNanos += System.nanoTime() - putStart;
+        busyNanos[SPLIT] = System.nanoTime() - start - putNanos - input.getWaitNanos();
+        return null;
+    }
+
+    /**
+     * Tokenize stage, parses the review fields lines in single pass mode, handing full pairs buffers
+     * to the spill stage.
+     */
+    private Void tokenize(BlockingQueue<byte[]> lines, RunWriter runWriter, String dir) throws IOException {
+        long start = System.nanoTime();
+        QueueInputStream input = new QueueInputStream(lines);
+        Parser parser = new Parser(input, sorter, 0, runWriter);
+        parser.setBatchSize(batchSize);
+        IndexWriter.parseSequential(parser, dir);
+        busyNanos[TOKENIZE] = System.nanoTime() - start - input.getWaitNanos() - runWriter.getWaitNanos();
+        this.parser = parser;
+        return null;
+    }
+
+    /**
+     * Prints the time each stage was busy, the stage with the highest utilization is the bottleneck.
+     *
+     * @param elapsedNanos pipeline elapsed time.
+     */
+    private void printReport(long elapsedNanos) {
+        for (int i = 0; i < NUM_STAGES; i++) {
+            System.out.printf("[pipeline] %-10s busy %.2fs of %.2fs (%.1f%%)%n",
+                    STAGE_NAMES[i],
+                    busyNanos[i] * 1e-9,
+                    elapsedNanos * 1e-9,
+                    100.0 * busyNanos[i] / elapsedNanos
+            );
+        }
+    }
+}
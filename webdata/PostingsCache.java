@@ -0,0 +1,151 @@
+package webdata;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * PostingsCache class.
+ * A segmented LRU cache of the encoded postings lists of terms, bounded by the bytes of the lists.
+ * Lists enter a probation segment, and move to a protected segment, of PROTECTED_SHARE of the
+ * capacity, when they are read again. Lists demoted from the protected segment go back to probation,
+ * and evictions are taken from probation first, so a scan of lists read once cannot flush the lists
+ * that are read repeatedly. All methods are synchronized.
+ */
+public class PostingsCache {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final double PROTECTED_SHARE = 0.8;
+    private static final int ENTRY_OVERHEAD_BYTES = 64;  // map entry, key and array header
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final long capacity;
+    private final long protectedCapacity;
+    private final LinkedHashMap<Integer, byte[]> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Integer, byte[]> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationBytes = 0;
+    private long protectedBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * PostingsCache constructor.
+     *
+     * @param capacity capacity in bytes, 0 to cache nothing.
+     */
+    PostingsCache(long capacity) {
+        this.capacity = capacity;
+        this.protectedCapacity = (long) (capacity * PROTECTED_SHARE);
+    }
+
+    /**
+     * Returns the cached postings list of a term, promoting it to the protected segment.
+     *
+     * @param termId term index.
+     * @return the encoded postings list, or null if it is not cached.
+     */
+    synchronized byte[] get(int termId) {
+        byte[] postings = protectedSegment.get(termId);
+        if (postings != null) {
+            hits++;
+            return postings;
+        }
+        postings = probation.remove(termId);
+        if (postings == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        probationBytes -= size(postings);
+        protectedSegment.put(termId, postings);
+        protectedBytes += size(postings);
+        Iterator<Map.Entry<Integer, byte[]>> eldest = protectedSegment.entrySet().iterator();
+        while (protectedBytes > protectedCapacity) {
+            Map.Entry<Integer, byte[]> entry = eldest.next();
+            eldest.remove();
+            protectedBytes -= size(entry.getValue());
+            probation.put(entry.getKey(), entry.getValue());
+            probationBytes += size(entry.getValue());
+        }
+        return postings;
+    }
+
+    /**
+     * Adds the postings list of a term to the probation segment, evicting the least recently used lists
+     * until the cache fits its capacity. Lists larger than the probation segment are not cached.
+     *
+     * @param termId   term index.
+     * @param postings encoded postings list.
+     */
+    synchronized void put(int termId, byte[] postings) {
+        if (size(postings) > capacity - protectedCapacity
+                || probation.containsKey(termId) || protectedSegment.containsKey(termId)) {
+            return;
+        }
+        probation.put(termId, postings);
+        probationBytes += size(postings);
+        evict(probation, true);
+        evict(protectedSegment, false);
+    }
+
+    /**
+     * Evicts the least recently used lists of a segment while the cache is over its capacity.
+     */
+    private void evict(LinkedHashMap<Integer, byte[]> segment, boolean isProbation) {
+        Iterator<byte[]> eldest = segment.values().iterator();
+        while (probationBytes + protectedBytes > capacity && eldest.hasNext()) {
+            long size = size(eldest.next());
+            eldest.remove();
+            if (isProbation) {
+                probationBytes -= size;
+            } else {
+                protectedBytes -= size;
+            }
+            evictions++;
+        }
+    }
+
+    private static long size(byte[] postings) {
+        return postings.length + ENTRY_OVERHEAD_BYTES;
+    }
+
+    /**
+     * @return the capacity of the cache in bytes.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the bytes of the cached postings lists.
+     */
+    public synchronized long getSize() {
+        return probationBytes + protectedBytes;
+    }
+
+    /**
+     * @return the number of lookups that found their postings list cached.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of lookups that read their postings list from the index.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of postings lists evicted from the cache.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
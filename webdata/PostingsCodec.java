@@ -0,0 +1,57 @@
+package webdata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * PostingsCodec interface.
+ * Encodes the blocks of a postings list. A list is split into blocks of up to the block size postings,
+ * each starting on a new byte. A posting is the gap from the previous docId of the list (the docId
+ * itself for the first one) and the frequency of the term in that review. The number of postings of
+ * every block is known to the reader from the review frequency of the term, so it is not stored.
+ * Codecs may keep scratch buffers for encoding, so an instance encodes on one thread, while decoding
+ * keeps no state and may run on concurrent threads.
+ */
+interface PostingsCodec {
+
+    int BLOCK_SIZE = 128;
+
+    /**
+     * Returns a new instance of the given codec.
+     *
+     * @param codec codec type.
+     */
+    static PostingsCodec create(IndexWriterOptions.Codec codec) {
+        switch (codec) {
+            case VBYTE:
+                return new VByteCodec();
+            case PFOR:
+                return new PForCodec();
+            default:
+                return new GammaCodec();
+        }
+    }
+
+    /**
+     * Writes a block of postings.
+     *
+     * @param gaps  docId gaps.
+     * @param freqs frequencies.
+     * @param n     number of postings.
+     * @param out   output stream.
+     * @throws IOException
+     */
+    void encodeBlock(int[] gaps, int[] freqs, int n, OutputStream out) throws IOException;
+
+    /**
+     * Reads a block of postings.
+     *
+     * @param bytes  encoded postings.
+     * @param offset offset of the block.
+     * @param n      number of postings.
+     * @param gaps   docId gaps output.
+     * @param freqs  frequencies output.
+     * @return offset of the next block.
+     */
+    int decodeBlock(byte[] bytes, int offset, int n, int[] gaps, int[] freqs);
+}
@@ -0,0 +1,54 @@
+package webdata;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+/**
+ * PostingsEnumeration class.
+ * Adapts a PostingsIterator to the id-1, freq-1, id-2, freq-2, ... Enumeration of IndexReader,
+ * decoding the list as it is enumerated.
+ */
+class PostingsEnumeration implements Enumeration<Integer> {
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final PostingsIterator postings;
+    private boolean freqNext = false;
+    private boolean docFetched = false;
+
+    /**
+     * PostingsEnumeration constructor.
+     *
+     * @param postings postings list iterator.
+     */
+    PostingsEnumeration(PostingsIterator postings) {
+        this.postings = postings;
+    }
+
+    @Override
+    public boolean hasMoreElements() {
+        if (freqNext) {
+            return true;
+        }
+        if (!docFetched) {
+            postings.nextDoc();
+            docFetched = true;
+        }
+        return postings.docId() != PostingsIterator.NO_MORE_DOCS;
+    }
+
+    @Override
+    public Integer nextElement() {
+        if (freqNext) {
+            freqNext = false;
+            docFetched = false;
+            return postings.freq();
+        }
+        if (!hasMoreElements()) {
+            throw new NoSuchElementException();
+        }
+        freqNext = true;
+        return postings.docId();
+    }
+}
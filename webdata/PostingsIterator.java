@@ -0,0 +1,213 @@
+package webdata;
+
+/**
+ * PostingsIterator class.
+ * Iterates over the docIds of a postings list and their frequencies, decoding one block of postings at
+ * a time. Lists of more than one block start with a skip table holding, for every block but the first,
+ * the docId before it and its offset from the end of the table, as big endian ints, so advance can
+ * jump straight to the block that may hold its target.
+ * The list is read from the postings file in one bulk read, and its blocks are decoded only as the
+ * iteration reaches them, into reused primitive arrays.
+ */
+public class PostingsIterator {
+
+    /**
+     * Returned by nextDoc and advance once the list is exhausted, greater than any docId.
+     */
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /**
+     * Empty iterator, returned for terms that are not in the dictionary. It starts exhausted and its
+     * calls only write the same exhausted state, so a single instance is shared by concurrent threads.
+     */
+    static final PostingsIterator EMPTY = exhausted(new PostingsIterator(new int[0], new int[0]));
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final int SKIP_ENTRY_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final byte[] bytes;
+    private final int reviewFreq;
+    private final PostingsCodec codec;
+    private final int blockSize;
+    private final int numBlocks;
+    private final int skipsOffset;     // -1 if the list has no skip table
+    private final int blocksOffset;
+    private final int[] docIds;
+    private final int[] freqs;
+    private int block = -1;
+    private int blockLength = 0;
+    private int nextBlockOffset;
+    private int pos = -1;
+    private int docId = -1;
+
+    /**
+     * Creates an iterator over an encoded postings list.
+     *
+     * @param bytes      encoded postings list.
+     * @param offset     offset of the list.
+     * @param reviewFreq number of docIds in the list.
+     * @param codec      codec of the list blocks.
+     * @param blockSize  number of postings in every block but the last.
+     * @param skipData   true if lists of more than one block start with a skip table.
+     */
+    PostingsIterator(byte[] bytes, int offset, int reviewFreq, PostingsCodec codec, int blockSize,
+                     boolean skipData) {
+        this.bytes = bytes;
+        this.reviewFreq = reviewFreq;
+        this.codec = codec;
+        this.blockSize = blockSize;
+        this.numBlocks = (int) ((reviewFreq + (long) blockSize - 1) / blockSize);
+        this.skipsOffset = skipData && numBlocks > 1 ? offset : -1;
+        this.blocksOffset = skipsOffset < 0 ? offset : offset + (numBlocks - 1) * SKIP_ENTRY_BYTES;
+        this.nextBlockOffset = blocksOffset;
+        this.docIds = new int[Math.min(blockSize, reviewFreq)];
+        this.freqs = new int[docIds.length];
+    }
+
+    /**
+     * Creates an iterator over a decoded postings list, as a single block.
+     *
+     * @param docIds docIds of the list.
+     * @param freqs  frequencies of the docIds.
+     */
+    PostingsIterator(int[] docIds, int[] freqs) {
+        this.bytes = null;
+        this.reviewFreq = docIds.length;
+        this.codec = null;
+        this.blockSize = docIds.length;
+        this.numBlocks = docIds.length > 0 ? 1 : 0;
+        this.skipsOffset = -1;
+        this.blocksOffset = 0;
+        this.docIds = docIds;
+        this.freqs = freqs;
+        this.block = numBlocks - 1;
+        this.blockLength = docIds.length;
+    }
+
+    private static PostingsIterator exhausted(PostingsIterator postings) {
+        postings.docId = NO_MORE_DOCS;
+        return postings;
+    }
+
+    /**
+     * @return the number of docIds in the list.
+     */
+    public int size() {
+        return reviewFreq;
+    }
+
+    /**
+     * @return the current docId, -1 before the first call to nextDoc.
+     */
+    public int docId() {
+        return docId;
+    }
+
+    /**
+     * @return the frequency of the term in the current docId.
+     */
+    public int freq() {
+        return freqs[pos];
+    }
+
+    /**
+     * Moves to the next docId of the list.
+     *
+     * @return the next docId, or NO_MORE_DOCS if the list is exhausted.
+     */
+    public int nextDoc() {
+        if (pos + 1 < blockLength) {
+            return docId = docIds[++pos];
+        }
+        if (block + 1 < numBlocks) {
+            readBlock(block + 1, nextBlockOffset, block < 0 ? 0 : docIds[blockLength - 1]);
+            return docId = docIds[pos = 0];
+        }
+        pos = blockLength - 1;
+        return docId = NO_MORE_DOCS;
+    }
+
+    /**
+     * Moves to the first docId of the list that is not less than the target, without moving back.
+     * Blocks that end before the target are skipped without being decoded.
+     *
+     * @param target docId to advance to.
+     * @return the docId moved to, or NO_MORE_DOCS if the list is exhausted.
+     */
+    public int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+        if (block < 0 || docIds[blockLength - 1] < target) {
+            if (block + 1 == numBlocks) {
+                pos = blockLength - 1;
+                return docId = NO_MORE_DOCS;
+            }
+            if (skipsOffset >= 0) {
+                // the last block whose previous docId is below the target
+                int lo = block + 1, hi = numBlocks - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi + 1) >>> 1;
+                    if (skipDocId(mid) < target) {
+                        lo = mid;
+                    } else {
+                        hi = mid - 1;
+                    }
+                }
+                if (lo == 0) {
+                    readBlock(0, blocksOffset, 0);
+                } else {
+                    readBlock(lo, blocksOffset + skipOffset(lo), skipDocId(lo));
+                }
+            } else {
+                do {
+                    readBlock(block + 1, nextBlockOffset, block < 0 ? 0 : docIds[blockLength - 1]);
+                } while (docIds[blockLength - 1] < target && block + 1 < numBlocks);
+            }
+            pos = -1;
+        }
+        while (++pos < blockLength) {
+            if (docIds[pos] >= target) {
+                return docId = docIds[pos];
+            }
+        }
+        pos = blockLength - 1;
+        return docId = NO_MORE_DOCS;
+    }
+
+    /**
+     * Decodes a block into absolute docIds.
+     *
+     * @param b         block index.
+     * @param offset    block offset.
+     * @param prevDocId docId before the block.
+     */
+    private void readBlock(int b, int offset, int prevDocId) {
+        blockLength = Math.min(blockSize, reviewFreq - b * blockSize);
+        nextBlockOffset = codec.decodeBlock(bytes, offset, blockLength, docIds, freqs);
+        for (int i = 0; i < blockLength; i++) {
+            prevDocId += docIds[i];
+            docIds[i] = prevDocId;
+        }
+        block = b;
+        pos = 0;
+    }
+
+    private int skipDocId(int b) {
+        return readInt(skipsOffset + (b - 1) * SKIP_ENTRY_BYTES);
+    }
+
+    private int skipOffset(int b) {
+        return readInt(skipsOffset + (b - 1) * SKIP_ENTRY_BYTES + Integer.BYTES);
+    }
+
+    private int readInt(int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+}
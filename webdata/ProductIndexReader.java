@@ -7,6 +7,7 @@ import java.util.*;
 
 /**
  * ProductIndexReader class.
+ * Holds the product index in memory, which it only reads, so it may be used by concurrent threads.
  */
 class ProductIndexReader {
 
@@ -17,7 +18,6 @@ class ProductIndexReader {
     private static final String PRODUCT_INDEX_FILENAME = "/product_index";
     private static final int PID_LENGTH = 10;
     private byte[] indexBuffer;
-    private RandomAccessFile productIndexFile;
 
     /**
      * Constructor.
@@ -25,10 +25,9 @@ class ProductIndexReader {
      * @param dir directory.
      */
     ProductIndexReader(String dir) {
-        try {
-            this.productIndexFile = new RandomAccessFile(dir + PRODUCT_INDEX_FILENAME, "r");
-            this.indexBuffer = new byte[(int) this.productIndexFile.length()];
-            this.productIndexFile.readFully(indexBuffer);
+        try (RandomAccessFile productIndexFile = new RandomAccessFile(dir + PRODUCT_INDEX_FILENAME, "r")) {
+            this.indexBuffer = new byte[(int) productIndexFile.length()];
+            productIndexFile.readFully(indexBuffer);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -52,8 +51,8 @@ class ProductIndexReader {
      * @param productId the search term.
      * @return index of productId in file, -1 if not found.
      */
-    private int binarySearch(String productId) throws IOException {
-        int n = (int) productIndexFile.length() / PRODUCT_INDEX_ROW_SIZE;
+    private int binarySearch(String productId) {
+        int n = indexBuffer.length / PRODUCT_INDEX_ROW_SIZE;
         int start = 0;
         int end = n;
 
@@ -118,17 +117,11 @@ class ProductIndexReader {
      * Returns an empty Enumeration if there are no reviews for this product
      */
     Enumeration<Integer> getProductReviews(String productId) {
-        try {
-            int idx = binarySearch(productId);
-            if (idx == -1) {
-                return Collections.emptyEnumeration();
-            }
-
-            return Collections.enumeration(getReviews(idx));
-
-        } catch (IOException e) {
-            e.printStackTrace();
+        int idx = binarySearch(productId);
+        if (idx == -1) {
             return Collections.emptyEnumeration();
         }
+
+        return Collections.enumeration(getReviews(idx));
     }
 }
@@ -0,0 +1,80 @@
+package webdata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * QueueInputStream class.
+ * An input stream over byte buffers handed over by another thread through a bounded queue.
+ * An empty buffer marks the end of the stream.
+ */
+class QueueInputStream extends InputStream {
+
+    static final byte[] END = new byte[0];
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final BlockingQueue<byte[]> queue;
+    private byte[] buffer = null;
+    private int pos = 0;
+    private boolean eof = false;
+    private long waitNanos = 0;
+
+    /**
+     * QueueInputStream constructor.
+     *
+     * @param queue queue of buffers to read.
+     */
+    QueueInputStream(BlockingQueue<byte[]> queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * Takes the next buffer from the queue if the current one was fully read.
+     *
+     * @return false if the end of the stream is reached.
+     */
+    private boolean nextBuffer() throws IOException {
+        while (!eof && (buffer == null || pos == buffer.length)) {
+            long start = System.nanoTime();
+            try {
+                buffer = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            waitNanos += System.nanoTime() - start;
+            pos = 0;
+            eof = buffer == END;
+        }
+        return !eof;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return nextBuffer() ? buffer[pos++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBuffer()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.length - pos);
+        System.arraycopy(buffer, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    /**
+     * Returns the time spent waiting for buffers, in nanoseconds.
+     */
+    long getWaitNanos() {
+        return waitNanos;
+    }
+}
@@ -1,66 +1,115 @@
 package webdata;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 
 /**
  * ReviewIndexReader class.
+ * Memory maps the review metadata and reads the fields of a review in place without allocating, either
+ * at their offsets in its fixed size row or at its index in the packed column of every field, as recorded
+ * by the index header, see ReviewIndexWriter. Only absolute reads are used, so it may be used by
+ * concurrent threads.
  */
 class ReviewIndexReader {
 
     /**
      * --- FIELDS ---
      */
-    private static final int REVIEW_INDEX_ROW_SIZE = 15; // size in bytes
+    private static final int PRODUCT_ID_LENGTH = ReviewIndexWriter.PRODUCT_ID_LENGTH;
+    private static final int ROW_SIZE = ReviewIndexWriter.REVIEW_INDEX_ROW_SIZE;
     private static final String REVIEW_INDEX_FILENAME = "/review_metadata_index";
-    private RandomAccessFile reviewIndexFile;
+    private int numReviews;
+
+    // rows layout
+    private ByteBuffer reviewIndex;
+
+    // columns layout
+    private ByteBuffer productIds;
+    private PackedColumn productStarts;
+    private int numProductRuns;
+    private PackedColumn scores;
+    private PackedColumn helpfulnessNumerators;
+    private PackedColumn helpfulnessDenominators;
+    private PackedColumn tokenCounts;
 
     /**
      * Review Index Reader constructor.
+     *
+     * @param dir    index directory.
+     * @param header index header.
      */
-    ReviewIndexReader(String dir) {
+    ReviewIndexReader(String dir, IndexHeader header) {
         try {
-            this.reviewIndexFile = new RandomAccessFile(dir + REVIEW_INDEX_FILENAME, "r");
+            if (header.getReviewMetadataLayout() == IndexWriterOptions.ReviewMetadataLayout.COLUMNS) {
+                this.productIds = Utils.map(dir + ReviewIndexWriter.PRODUCT_IDS_FILENAME);
+                this.productStarts = new PackedColumn(dir + ReviewIndexWriter.PRODUCT_STARTS_FILENAME);
+                this.numProductRuns = productIds.limit() / PRODUCT_ID_LENGTH;
+                this.scores = new PackedColumn(dir + ReviewIndexWriter.SCORES_FILENAME);
+                this.helpfulnessNumerators = new PackedColumn(dir + ReviewIndexWriter.HELPFULNESS_NUMERATORS_FILENAME);
+                this.helpfulnessDenominators =
+                        new PackedColumn(dir + ReviewIndexWriter.HELPFULNESS_DENOMINATORS_FILENAME);
+                this.tokenCounts = new PackedColumn(dir + ReviewIndexWriter.TOKEN_COUNTS_FILENAME);
+                this.numReviews = header.getNumReviews();
+            } else {
+                this.reviewIndex = Utils.map(dir + REVIEW_INDEX_FILENAME);
+                this.numReviews = reviewIndex.limit() / ROW_SIZE;
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Returns true if there is a review with the given identifier.
+     */
+    private boolean exists(int reviewId) {
+        return reviewId >= 1 && reviewId <= numReviews;
+    }
+
     /**
      * Returns the product identifier for the given review
      * Returns null if there is no review with the given identifier
      */
     String getProductId(int reviewId) {
-        int productIdLength = 10;
-        int productOffset = 0;
-        byte[] buffer;
-
-        try {
-            buffer = read(reviewId, productIdLength, productOffset);
-        } catch (IOException e) {
+        if (!exists(reviewId)) {
             return null;
         }
-
+        ByteBuffer source = reviewIndex;
+        int position = ROW_SIZE * (reviewId - 1);
+        if (reviewIndex == null) {
+            source = productIds;
+            position = PRODUCT_ID_LENGTH * productRun(reviewId - 1);
+        }
+        byte[] buffer = new byte[PRODUCT_ID_LENGTH];
+        for (int i = 0; i < PRODUCT_ID_LENGTH; i++) {
+            buffer[i] = source.get(position + i);
+        }
         return new String(buffer);
     }
 
+    /**
+     * Returns the run of reviews with the same product id holding the review at the given index, the last
+     * run starting at or before it.
+     */
+    private int productRun(int index) {
+        int low = 0, high = numProductRuns - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (productStarts.get(mid) <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
     /**
      * Returns the score for a given review
      * Returns -1 if there is no review with the given identifier
      */
     int getReviewScore(int reviewId) {
-        int scoreLength = 1;
-        int scoreOffset = 10;
-        byte[] buffer;
-
-        try {
-            buffer = read(reviewId, scoreLength, scoreOffset);
-        } catch (IOException e) {
-            return -1;
-        }
-
-        return buffer[0]; // score is 1 byte
+        return getField(reviewId, scores, ReviewIndexWriter.SCORE_OFFSET);
     }
 
     /**
@@ -68,18 +117,7 @@ class ReviewIndexReader {
      * Returns -1 if there is no review with the given identifier
      */
     int getReviewHelpfulnessNumerator(int reviewId) {
-        int HelpfulnessNumeratorLength = 1;
-        int HelpfulnessNumeratorOffset = 11;
-        byte[] buffer;
-
-        try {
-            buffer = read(reviewId, HelpfulnessNumeratorLength,
-                    HelpfulnessNumeratorOffset);
-        } catch (IOException e) {
-            return -1;
-        }
-
-        return buffer[0]; // Helpfulness numerator is 1 byte
+        return getField(reviewId, helpfulnessNumerators, ReviewIndexWriter.HELPFULNESS_NUMERATOR_OFFSET);
     }
 
     /**
@@ -87,18 +125,7 @@ class ReviewIndexReader {
      * Returns -1 if there is no review with the given identifier
      */
     int getReviewHelpfulnessDenominator(int reviewId) {
-        int HelpfulnessDenominatorLength = 1;
-        int HelpfulnessDenominatorOffset = 12;
-        byte[] buffer;
-
-        try {
-            buffer = read(reviewId, HelpfulnessDenominatorLength,
-                    HelpfulnessDenominatorOffset);
-        } catch (IOException e) {
-            return -1;
-        }
-
-        return buffer[0]; // Helpfulness denominator is 1 byte
+        return getField(reviewId, helpfulnessDenominators, ReviewIndexWriter.HELPFULNESS_DENOMINATOR_OFFSET);
     }
 
     /**
@@ -106,47 +133,75 @@ class ReviewIndexReader {
      * Returns -1 if there is no review with the given identifier
      */
     int getReviewLength(int reviewId) {
-        int TokenCountLength = 2;
-        int TokenCountOffset = 13;
-        byte[] buffer;
+        return getField(reviewId, tokenCounts, ReviewIndexWriter.TOKEN_COUNT_OFFSET);
+    }
 
-        try {
-            buffer = read(reviewId, TokenCountLength,
-                    TokenCountOffset);
-        } catch (IOException e) {
+    /**
+     * Returns a field of a review from its column, or from its row at the given offset, where the token
+     * count is a short and the other fields are bytes.
+     */
+    private int getField(int reviewId, PackedColumn column, int offset) {
+        if (!exists(reviewId)) {
             return -1;
         }
+        if (column != null) {
+            return column.get(reviewId - 1);
+        }
+        int position = ROW_SIZE * (reviewId - 1) + offset;
+        return offset == ReviewIndexWriter.TOKEN_COUNT_OFFSET ? reviewIndex.getShort(position)
+                : reviewIndex.get(position);
+    }
 
-        ByteBuffer bb = ByteBuffer.allocate(TokenCountLength);
-        bb.put(buffer[0]);
-        bb.put(buffer[1]);
-        return bb.getShort(0);
+    /**
+     * Fills out with the scores of the given reviews, -1 for ids with no review.
+     *
+     * @param reviewIds review identifiers, sorted for sequential access.
+     * @param out       scores output, at least as long as reviewIds.
+     */
+    void getReviewScores(int[] reviewIds, int[] out) {
+        getFields(reviewIds, scores, ReviewIndexWriter.SCORE_OFFSET, out);
     }
 
     /**
-     * Return the number of product reviews available in the system
+     * Fills out with the helpfulness numerators of the given reviews, -1 for ids with no review.
+     *
+     * @param reviewIds review identifiers, sorted for sequential access.
+     * @param out       numerators output, at least as long as reviewIds.
      */
-    int getNumberOfReviews() {
-        try {
-            return (int) (reviewIndexFile.length() / REVIEW_INDEX_ROW_SIZE);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return 0;
-        }
+    void getReviewHelpfulnessNumerators(int[] reviewIds, int[] out) {
+        getFields(reviewIds, helpfulnessNumerators, ReviewIndexWriter.HELPFULNESS_NUMERATOR_OFFSET, out);
+    }
+
+    /**
+     * Fills out with the helpfulness denominators of the given reviews, -1 for ids with no review.
+     *
+     * @param reviewIds review identifiers, sorted for sequential access.
+     * @param out       denominators output, at least as long as reviewIds.
+     */
+    void getReviewHelpfulnessDenominators(int[] reviewIds, int[] out) {
+        getFields(reviewIds, helpfulnessDenominators, ReviewIndexWriter.HELPFULNESS_DENOMINATOR_OFFSET, out);
     }
 
     /**
-     * Reads from review metadata index and returns read buffer.
+     * Fills out with the number of tokens in the given reviews, -1 for ids with no review.
      *
-     * @param reviewId review ID.
-     * @param offset   row offset index file.
-     * @param len      length of the attribute in bytes.
-     * @return returns read buffer.
+     * @param reviewIds review identifiers, sorted for sequential access.
+     * @param out       lengths output, at least as long as reviewIds.
+     */
+    void getReviewLengths(int[] reviewIds, int[] out) {
+        getFields(reviewIds, tokenCounts, ReviewIndexWriter.TOKEN_COUNT_OFFSET, out);
+    }
+
+    private void getFields(int[] reviewIds, PackedColumn column, int offset, int[] out) {
+        for (int i = 0; i < reviewIds.length; i++) {
+            out[i] = getField(reviewIds[i], column, offset);
+        }
+    }
+
+    /**
+     * Return the number of product reviews available in the system
      */
-    private byte[] read(int reviewId, int len, int offset) throws IOException {
-        byte[] buffer = new byte[len];
-        reviewIndexFile.seek(REVIEW_INDEX_ROW_SIZE * (reviewId - 1) + offset);
-        reviewIndexFile.readFully(buffer);
-        return buffer;
+    int getNumberOfReviews() {
+        return numReviews;
     }
 }
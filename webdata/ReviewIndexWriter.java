@@ -1,13 +1,29 @@
 package webdata;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * ReviewIndexWriter Class
+ * Writes the review metadata as fixed size rows, which writeColumns may then split into packed columns,
+ * see ReviewIndexReader.
  */
 class ReviewIndexWriter {
 
     private static final String REVIEW_INDEX_FILENAME = "/review_metadata_index";
+    static final int REVIEW_INDEX_ROW_SIZE = 15; // size in bytes
+    static final int PRODUCT_ID_LENGTH = 10;
+    static final int SCORE_OFFSET = 10;
+    static final int HELPFULNESS_NUMERATOR_OFFSET = 11;
+    static final int HELPFULNESS_DENOMINATOR_OFFSET = 12;
+    static final int TOKEN_COUNT_OFFSET = 13;
+    static final String PRODUCT_IDS_FILENAME = "/review_product_ids";
+    static final String PRODUCT_STARTS_FILENAME = "/review_product_starts";
+    static final String SCORES_FILENAME = "/review_scores";
+    static final String HELPFULNESS_NUMERATORS_FILENAME = "/review_helpfulness_numerators";
+    static final String HELPFULNESS_DENOMINATORS_FILENAME = "/review_helpfulness_denominators";
+    static final String TOKEN_COUNTS_FILENAME = "/review_token_counts";
     private Parser parser;
     private int reviewsWrittenCount = 0;
     private DataOutputStream reviewIndexFile;
@@ -19,9 +35,141 @@ class ReviewIndexWriter {
      * @param dir    directory to save files to.
      */
     ReviewIndexWriter(Parser parser, String dir) throws IOException {
+        this(parser, new File(dir + REVIEW_INDEX_FILENAME));
+    }
+
+    /**
+     * ReviewIndexWriter constructor writing to the given file.
+     *
+     * @param parser Parser object.
+     * @param file   file to save review metadata to.
+     */
+    ReviewIndexWriter(Parser parser, File file) throws IOException {
         this.parser = parser;
-        reviewIndexFile = new DataOutputStream(new BufferedOutputStream(
-                new FileOutputStream(dir + REVIEW_INDEX_FILENAME)));
+        reviewIndexFile = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    /**
+     * Writes the review metadata index by concatenating review metadata files of consecutive reviews.
+     *
+     * @param parts review metadata files, in reviews order.
+     * @param dir   directory to save files to.
+     */
+    static void concatenate(File[] parts, String dir) throws IOException {
+        try (FileChannel output = new FileOutputStream(dir + REVIEW_INDEX_FILENAME).getChannel()) {
+            for (File part : parts) {
+                try (FileChannel input = new FileInputStream(part).getChannel()) {
+                    long position = 0, size = input.size();
+                    while (position < size) {
+                        position += input.transferTo(position, size - position, output);
+                    }
+                }
+                part.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of reviews in the review metadata rows of the given directory.
+     *
+     * @param dir index directory.
+     */
+    static int countReviews(String dir) {
+        return (int) (new File(dir + REVIEW_INDEX_FILENAME).length() / REVIEW_INDEX_ROW_SIZE);
+    }
+
+    /**
+     * Splits the review metadata rows of the given directory into one packed column per field, each at
+     * the minimum width of its values, and deletes the rows. The reviews of a product are consecutive, so
+     * the product ids are run length encoded: the product id of every run of reviews with the same product
+     * id is written once to the product ids file, and the index of the first review of every run to the
+     * product starts column, which the reader binary searches.
+     *
+     * @param dir index directory.
+     * @return number of reviews.
+     * @throws IOException
+     */
+    static int writeColumns(String dir) throws IOException {
+        File rowsFile = new File(dir + REVIEW_INDEX_FILENAME);
+        int numReviews = countReviews(dir);
+        byte[] row = new byte[REVIEW_INDEX_ROW_SIZE];
+        ByteBuffer rowBuffer = ByteBuffer.wrap(row);
+        byte[] productId = new byte[PRODUCT_ID_LENGTH];
+
+        // first pass, the product ids of the runs and the range of every field
+        int[] min = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+        int[] max = {Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        int[] values = new int[min.length];
+        int lastStart = 0;
+        try (DataInputStream rows = new DataInputStream(new BufferedInputStream(new FileInputStream(rowsFile)));
+             OutputStream productIds = new BufferedOutputStream(new FileOutputStream(dir + PRODUCT_IDS_FILENAME))) {
+            for (int i = 0; i < numReviews; i++) {
+                rows.readFully(row);
+                if (i == 0 || !sameProductId(row, productId)) {
+                    System.arraycopy(row, 0, productId, 0, PRODUCT_ID_LENGTH);
+                    productIds.write(productId);
+                    lastStart = i;
+                }
+                readFields(rowBuffer, 0, values);
+                for (int j = 0; j < values.length; j++) {
+                    min[j] = Math.min(min[j], values[j]);
+                    max[j] = Math.max(max[j], values[j]);
+                }
+            }
+        }
+
+        // second pass, the packed columns
+        PackedColumn.Writer starts = new PackedColumn.Writer(dir + PRODUCT_STARTS_FILENAME, 0, lastStart);
+        String[] fieldFiles = {SCORES_FILENAME, HELPFULNESS_NUMERATORS_FILENAME,
+                HELPFULNESS_DENOMINATORS_FILENAME, TOKEN_COUNTS_FILENAME};
+        PackedColumn.Writer[] fields = new PackedColumn.Writer[fieldFiles.length];
+        for (int j = 0; j < fields.length; j++) {
+            fields[j] = new PackedColumn.Writer(dir + fieldFiles[j], Math.min(min[j], max[j]), max[j]);
+        }
+        try (DataInputStream rows = new DataInputStream(new BufferedInputStream(new FileInputStream(rowsFile)))) {
+            for (int i = 0; i < numReviews; i++) {
+                rows.readFully(row);
+                if (i == 0 || !sameProductId(row, productId)) {
+                    System.arraycopy(row, 0, productId, 0, PRODUCT_ID_LENGTH);
+                    starts.add(i);
+                }
+                readFields(rowBuffer, 0, values);
+                for (int j = 0; j < fields.length; j++) {
+                    fields[j].add(values[j]);
+                }
+            }
+        }
+        starts.close();
+        for (PackedColumn.Writer field : fields) {
+            field.close();
+        }
+        if (!rowsFile.delete()) {
+            throw new IOException("Could not delete " + rowsFile);
+        }
+        return numReviews;
+    }
+
+    /**
+     * Returns true if the row starts with the given product id.
+     */
+    private static boolean sameProductId(byte[] row, byte[] productId) {
+        for (int j = 0; j < PRODUCT_ID_LENGTH; j++) {
+            if (row[j] != productId[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the score, helpfulness numerator and denominator, and token count of a row, as the rows
+     * reader returns them.
+     */
+    private static void readFields(ByteBuffer rows, int row, int[] values) {
+        values[0] = rows.get(row + SCORE_OFFSET);
+        values[1] = rows.get(row + HELPFULNESS_NUMERATOR_OFFSET);
+        values[2] = rows.get(row + HELPFULNESS_DENOMINATOR_OFFSET);
+        values[3] = rows.getShort(row + TOKEN_COUNT_OFFSET);
     }
 
     /**
@@ -0,0 +1,257 @@
+package webdata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * ReviewScanner class.
+ * Splits a raw ASCII / UTF-8 reviews stream into lines and review fields, and the review text into
+ * lower case alphanumeric tokens, working directly on the bytes buffer.
+ */
+class ReviewScanner {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    static final int PRODUCT_ID = 0;
+    static final int HELPFULNESS = 1;
+    static final int SCORE = 2;
+    static final int TEXT = 3;
+    static final int NUM_FIELDS = 4;
+
+    private static final byte[][] PREFIXES = {
+            "product/productId: ".getBytes(StandardCharsets.US_ASCII),
+            "review/helpfulness: ".getBytes(StandardCharsets.US_ASCII),
+            "review/score: ".getBytes(StandardCharsets.US_ASCII),
+            "review/text: ".getBytes(StandardCharsets.US_ASCII)
+    };
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Maps every byte to its lower case value if it is alphanumeric, and to 0 otherwise.
+     */
+    private static final byte[] LOWER = new byte[256];
+
+    static {
+        for (int c = '0'; c <= '9'; c++) LOWER[c] = (byte) c;
+        for (int c = 'a'; c <= 'z'; c++) LOWER[c] = (byte) c;
+        for (int c = 'A'; c <= 'Z'; c++) LOWER[c] = (byte) (c - 'A' + 'a');
+    }
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private InputStream input;
+    private byte[] buffer;
+    private int limit = 0;
+    private int pos = 0;
+    private boolean eof = false;
+    private boolean skipLineFeed = false;
+
+    private int lineStart = 0;
+    private int lineEnd = 0;
+    private int contentStart = 0;
+    private int tokenStart = 0;
+    private int tokenEnd = 0;
+
+    /**
+     * ReviewScanner constructor.
+     *
+     * @param input reviews input stream.
+     */
+    ReviewScanner(InputStream input) {
+        this.input = input;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Reads more bytes into the buffer, keeping the bytes of the current line from start.
+     *
+     * @param start start of the current line.
+     * @return new start of the current line.
+     */
+    private int fill(int start) throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            limit -= start;
+            pos -= start;
+            start = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int n = input.read(buffer, limit, buffer.length - limit);
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+        return start;
+    }
+
+    /**
+     * Advances to the next line, lines are terminated by '\n', '\r' or "\r\n".
+     *
+     * @return false if EOF is reached.
+     * @throws IOException IOException.
+     */
+    boolean nextLine() throws IOException {
+        pos = Math.min(lineEnd + 1, limit);
+        int start = pos;
+
+        while (true) {
+            if (pos == limit) {
+                if (eof) break;
+                start = fill(start);
+                continue;
+            }
+            byte b = buffer[pos];
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (b == '\n') {
+                    start = ++pos;
+                    continue;
+                }
+            }
+            if (b == '\n' || b == '\r') {
+                skipLineFeed = b == '\r';
+                break;
+            }
+            pos++;
+        }
+        if (start == limit && eof) {
+            lineStart = lineEnd = limit;
+            return false;
+        }
+        lineStart = contentStart = tokenEnd = start;
+        lineEnd = pos;
+        return true;
+    }
+
+    /**
+     * Returns true if the current line is the given review field, and moves to the field content.
+     *
+     * @param field field type.
+     */
+    boolean isField(int field) {
+        byte[] prefix = PREFIXES[field];
+        if (lineEnd - lineStart < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[lineStart + i] != prefix[i]) {
+                return false;
+            }
+        }
+        contentStart = tokenEnd = lineStart + prefix.length;
+        return true;
+    }
+
+    /**
+     * Returns true if the current line is one of the review fields read by the Parser.
+     */
+    boolean isReviewField() {
+        for (int field = 0; field < NUM_FIELDS; field++) {
+            if (isField(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the length of the current line, including a line feed terminator.
+     */
+    int lineLength() {
+        return lineEnd - lineStart + 1;
+    }
+
+    /**
+     * Copies the current line terminated by a line feed to dest.
+     *
+     * @param dest    destination buffer.
+     * @param destPos position in destination buffer.
+     * @return position in destination buffer after the copied line.
+     */
+    int copyLine(byte[] dest, int destPos) {
+        int length = lineEnd - lineStart;
+        System.arraycopy(buffer, lineStart, dest, destPos, length);
+        dest[destPos + length] = '\n';
+        return destPos + length + 1;
+    }
+
+    /**
+     * Returns the content of the current field as a String.
+     */
+    String content() {
+        return new String(buffer, contentStart, lineEnd - contentStart, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Advances to the next alphanumeric token in the current field, and lower cases it in place.
+     *
+     * @return false if there are no more tokens in the field.
+     */
+    boolean nextToken() {
+        int i = tokenEnd;
+        while (i < lineEnd && LOWER[buffer[i] & 0xff] == 0) {
+            i++;
+        }
+        if (i == lineEnd) {
+            tokenStart = tokenEnd = lineEnd;
+            return false;
+        }
+        tokenStart = i;
+        byte lower;
+        while (i < lineEnd && (lower = LOWER[buffer[i] & 0xff]) != 0) {
+            buffer[i++] = lower;
+        }
+        tokenEnd = i;
+        return true;
+    }
+
+    /**
+     * Returns the buffer holding the current token.
+     */
+    byte[] tokenBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the offset of the current token in the token buffer.
+     */
+    int tokenOffset() {
+        return tokenStart;
+    }
+
+    /**
+     * Returns the length of the current token.
+     */
+    int tokenLength() {
+        return tokenEnd - tokenStart;
+    }
+
+    /**
+     * Returns the integer value of the current token.
+     */
+    int tokenValue() {
+        int value = 0;
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException();
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Closes the input stream.
+     */
+    void close() throws IOException {
+        input.close();
+    }
+}
@@ -32,10 +32,10 @@ public class ReviewSearch {
 
         Map<Integer, Double> reviewIdToScoreMap = new HashMap<>();
         for (int i = 0; i < terms.length; i++) {
-            Enumeration<Integer> postingList = indexReader.getReviewsWithToken(terms[i]);
-            while (postingList.hasMoreElements()) {
-                int reviewId = postingList.nextElement();
-                int freq = postingList.nextElement();
+            PostingsIterator postingList = indexReader.getPostingsIterator(terms[i]);
+            for (int reviewId = postingList.nextDoc(); reviewId != PostingsIterator.NO_MORE_DOCS;
+                 reviewId = postingList.nextDoc()) {
+                int freq = postingList.freq();
                 double termScore = reviewIdToScoreMap.getOrDefault(reviewId, 0.0);
                 termScore += (Math.log10(freq) + 1) * queryScores[i];
                 reviewIdToScoreMap.put(reviewId, termScore);
@@ -134,10 +134,10 @@ public class ReviewSearch {
         double[] smoothingVec = calcSmoothingVec(terms, lambda, N);
 
         for (int i = 0; i < terms.length; i++) {
-            Enumeration<Integer> postingList = indexReader.getReviewsWithToken(terms[i]);
-            while (postingList.hasMoreElements()) {
-                int reviewId = postingList.nextElement();
-                int freq = postingList.nextElement();
+            PostingsIterator postingList = indexReader.getPostingsIterator(terms[i]);
+            for (int reviewId = postingList.nextDoc(); reviewId != PostingsIterator.NO_MORE_DOCS;
+                 reviewId = postingList.nextDoc()) {
+                int freq = postingList.freq();
                 double[] termScore = reviewIdToScoreMapVec.getOrDefault(reviewId, new double[terms.length]);
                 double p1 = (double) freq / indexReader.getReviewLength(reviewId);
 
@@ -199,22 +199,39 @@ public class ReviewSearch {
 
         while (query.hasMoreElements()) {
             String term = query.nextElement();
-            Enumeration<Integer> postingList = indexReader.getReviewsWithToken(term);
-            while (postingList.hasMoreElements()) {
-                int reviewId = postingList.nextElement();
-                int freq = postingList.nextElement();
-                String pid = indexReader.getProductId(reviewId);
+            int[] reviewIds = getReviewIds(indexReader.getPostingsIterator(term));
+            int[] reviewScores = new int[reviewIds.length];
+            int[] numerators = new int[reviewIds.length];
+            int[] denominators = new int[reviewIds.length];
+            indexReader.getReviewScores(reviewIds, reviewScores);
+            indexReader.getReviewHelpfulnessNumerators(reviewIds, numerators);
+            indexReader.getReviewHelpfulnessDenominators(reviewIds, denominators);
+            for (int j = 0; j < reviewIds.length; j++) {
+                String pid = indexReader.getProductId(reviewIds[j]);
 
                 // calc score
-                int reviewScore = indexReader.getReviewScore(reviewId);
-                double helpfulness = (double) indexReader.getReviewHelpfulnessNumerator(reviewId) /
-                        indexReader.getReviewHelpfulnessDenominator(reviewId);
+                double helpfulness = (double) numerators[j] / denominators[j];
 
                 double score = pidToScoreMap.getOrDefault(pid, 1.0);
-                score += reviewScore * helpfulness;
+                score += reviewScores[j] * helpfulness;
                 pidToScoreMap.put(pid, score);
             }
         }
         return Collections.list(getBestKSortedKeys(pidToScoreMap, k));
     }
+
+    /**
+     * Returns the review ids of a postings list, in increasing order.
+     *
+     * @param postingList postings list iterator.
+     */
+    private static int[] getReviewIds(PostingsIterator postingList) {
+        int[] reviewIds = new int[postingList.size()];
+        int n = 0;
+        for (int reviewId = postingList.nextDoc(); reviewId != PostingsIterator.NO_MORE_DOCS;
+             reviewId = postingList.nextDoc()) {
+            reviewIds[n++] = reviewId;
+        }
+        return reviewIds;
+    }
 }
@@ -0,0 +1,135 @@
+package webdata;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * RunOutput class.
+ * Writes sorted packed (termId, docId) pairs to a run file in bulk, in one of the run formats:
+ * RAW writes every pair as big endian termId and docId ints.
+ * VBYTE splits the pairs into blocks of BLOCK_PAIRS pairs, and writes the termId gap and the docId
+ * (or its gap from the previous docId of the same termId) of every pair as variable byte codes,
+ * starting over in every block. For every block the index file holds its offset, its first pair and
+ * its number of pairs, so readers can seek to a block without decoding the ones before it.
+ */
+class RunOutput implements PairSink {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    static final String INDEX_SUFFIX = ".idx";
+    static final int BLOCK_PAIRS = 1 << 10;
+    static final int MAX_BLOCK_BYTES = BLOCK_PAIRS * 2 * 5; // two 5 bytes codes per pair
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final IndexWriterOptions.RunFormat format;
+    private final FileChannel file;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private DataOutputStream index = null;
+    private long written = 0;
+    private int blockSize = 0;
+    private long prevPair = 0;
+
+    /**
+     * RunOutput constructor.
+     *
+     * @param path   run file path.
+     * @param format run format.
+     * @throws IOException
+     */
+    RunOutput(String path, IndexWriterOptions.RunFormat format) throws IOException {
+        this.format = format;
+        this.file = new FileOutputStream(path).getChannel();
+        if (format == IndexWriterOptions.RunFormat.VBYTE) {
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path + INDEX_SUFFIX)));
+        }
+    }
+
+    @Override
+    public void write(long[] pairs, int n) throws IOException {
+        if (format == IndexWriterOptions.RunFormat.RAW) {
+            int pairsPerBuffer = BUFFER_BYTES / Long.BYTES;
+            for (int i = 0; i < n; i += pairsPerBuffer) {
+                int m = Math.min(pairsPerBuffer, n - i);
+                buffer.clear();
+                buffer.asLongBuffer().put(pairs, i, m);
+                buffer.limit(m * Long.BYTES);
+                flush();
+            }
+            return;
+        }
+
+        for (int i = 0; i < n; i++) {
+            long pair = pairs[i];
+            if (blockSize == BLOCK_PAIRS) {
+                finishBlock();
+            }
+            if (blockSize == 0) {
+                if (buffer.remaining() < MAX_BLOCK_BYTES) {
+                    buffer.flip();
+                    flush();
+                    buffer.clear();
+                }
+                index.writeLong(written + buffer.position());
+                index.writeLong(pair);
+                prevPair = 0;
+            }
+            int termIdGap = ExternalSort.termId(pair) - ExternalSort.termId(prevPair);
+            int docId = ExternalSort.docId(pair);
+            writeVByte(termIdGap);
+            writeVByte(termIdGap == 0 ? docId - ExternalSort.docId(prevPair) : docId);
+            prevPair = pair;
+            blockSize++;
+        }
+    }
+
+    /**
+     * Ends the current block, writing its number of pairs to the index.
+     */
+    private void finishBlock() throws IOException {
+        index.writeInt(blockSize);
+        blockSize = 0;
+    }
+
+    /**
+     * Writes a non negative int as a variable byte code, 7 bits in each byte with the high bit set
+     * on all bytes but the last.
+     */
+    private void writeVByte(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Writes the buffer from its position to its limit to the file.
+     */
+    private void flush() throws IOException {
+        written += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+    }
+
+    /**
+     * Writes the rest of the run and closes its files.
+     */
+    @Override
+    public void close() throws IOException {
+        if (format == IndexWriterOptions.RunFormat.VBYTE) {
+            if (blockSize > 0) {
+                finishBlock();
+            }
+            buffer.flip();
+            flush();
+            index.close();
+        }
+        file.close();
+    }
+}
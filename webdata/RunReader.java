@@ -0,0 +1,309 @@
+package webdata;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * RunReader class.
+ * Reads the packed (termId, docId) pairs of a sorted run in large blocks through a FileChannel into
+ * reusable buffers, mapping the termIds and offsetting the docIds of each block as it is read.
+ * A reader may be limited to a range of termIds, which it finds by binary search since the termId map
+ * keeps the run sorted. VBYTE runs are searched through their block index, see RunOutput.
+ */
+class RunReader {
+
+    /**
+     * Returned by next once the run is exhausted, greater than any pair.
+     */
+    static final long END = Long.MAX_VALUE;
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final IndexWriterOptions.RunFormat format;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final long[] block;
+    private final int[] termIdMap;
+    private final int docIdOffset;
+    private final long numPairs;
+    private long nextIndex = 0;
+    private long endIndex;
+    private int blockSize = 0;
+    private int pos = 0;
+
+    // VBYTE block index
+    private int numBlocks;
+    private long[] blockOffsets;
+    private long[] blockFirstPairs;
+    private long[] blockStarts;
+    private int nextBlock = 0;
+
+    /**
+     * RunReader constructor.
+     *
+     * @param file        run file.
+     * @param format      run format.
+     * @param blockPairs  number of pairs read at once.
+     * @param termIdMap   map applied to the termIds of the run, null if they are final.
+     * @param docIdOffset offset added to the docIds of the run.
+     * @throws IOException
+     */
+    RunReader(File file, IndexWriterOptions.RunFormat format, int blockPairs, int[] termIdMap, int docIdOffset)
+            throws IOException {
+        this.format = format;
+        this.channel = new FileInputStream(file).getChannel();
+        this.termIdMap = termIdMap;
+        this.docIdOffset = docIdOffset;
+
+        if (format == IndexWriterOptions.RunFormat.RAW) {
+            this.buffer = ByteBuffer.allocate(blockPairs * Long.BYTES);
+            this.block = new long[blockPairs];
+            this.numPairs = channel.size() / Long.BYTES;
+        } else {
+            int blocksPerRead = Math.max(1, blockPairs / RunOutput.BLOCK_PAIRS);
+            this.buffer = ByteBuffer.allocate(blocksPerRead * RunOutput.MAX_BLOCK_BYTES);
+            this.block = new long[blocksPerRead * RunOutput.BLOCK_PAIRS];
+            this.numPairs = readIndex(new File(file.getPath() + RunOutput.INDEX_SUFFIX));
+        }
+        this.endIndex = numPairs;
+    }
+
+    /**
+     * Reads the block index of a VBYTE run.
+     *
+     * @return number of pairs in the run.
+     */
+    private long readIndex(File indexFile) throws IOException {
+        numBlocks = (int) (indexFile.length() / (2 * Long.BYTES + Integer.BYTES));
+        blockOffsets = new long[numBlocks + 1];
+        blockFirstPairs = new long[numBlocks];
+        blockStarts = new long[numBlocks + 1];
+
+        try (DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            for (int i = 0; i < numBlocks; i++) {
+                blockOffsets[i] = index.readLong();
+                blockFirstPairs[i] = index.readLong();
+                blockStarts[i + 1] = blockStarts[i] + index.readInt();
+            }
+        }
+        blockOffsets[numBlocks] = channel.size();
+        return blockStarts[numBlocks];
+    }
+
+    /**
+     * Returns the number of pairs in the run.
+     */
+    long size() {
+        return numPairs;
+    }
+
+    /**
+     * Returns the mapped termId of the pair at the given index of the run. For VBYTE runs this is the
+     * termId of the first pair of the block holding it, which is enough for sampling.
+     *
+     * @param index pair index.
+     * @throws IOException
+     */
+    int termIdAt(long index) throws IOException {
+        if (format == IndexWriterOptions.RunFormat.VBYTE) {
+            return mapTermId(ExternalSort.termId(blockFirstPairs[blockOf(index)]));
+        }
+        ByteBuffer pairBuffer = ByteBuffer.allocate(Long.BYTES);
+        long offset = index * Long.BYTES;
+        while (pairBuffer.hasRemaining()) {
+            if (channel.read(pairBuffer, offset + pairBuffer.position()) < 0) {
+                throw new IOException("unexpected end of run");
+            }
+        }
+        return mapTermId(ExternalSort.termId(pairBuffer.getLong(0)));
+    }
+
+    /**
+     * Limits the reader to the pairs with termIds in [fromTermId, toTermId).
+     * Must be called before the first pair is read.
+     *
+     * @param fromTermId first termId.
+     * @param toTermId   termId after the last one.
+     * @throws IOException
+     */
+    void setRange(int fromTermId, int toTermId) throws IOException {
+        nextIndex = lowerBound(fromTermId);
+        endIndex = lowerBound(toTermId);
+        if (format == IndexWriterOptions.RunFormat.VBYTE) {
+            nextBlock = blockOf(nextIndex);
+        }
+        blockSize = 0;
+        pos = 0;
+    }
+
+    /**
+     * Returns the index of the first pair whose termId is not less than the given one.
+     */
+    private long lowerBound(int termId) throws IOException {
+        if (format == IndexWriterOptions.RunFormat.VBYTE) {
+            // blocks before lo start below termId, so the bound is in block lo - 1 or starts block lo
+            int lo = 0, hi = numBlocks;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (mapTermId(ExternalSort.termId(blockFirstPairs[mid])) < termId) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (lo == 0) {
+                return 0;
+            }
+            readBlocks(lo - 1, lo);
+            int i = 0;
+            while (i < blockSize && mapTermId(ExternalSort.termId(block[i])) < termId) {
+                i++;
+            }
+            return blockStarts[lo - 1] + i;
+        }
+
+        long lo = 0, hi = numPairs;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (termIdAt(mid) < termId) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the VBYTE block holding the pair at the given index.
+     */
+    private int blockOf(long index) {
+        int lo = 0, hi = numBlocks - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (blockStarts[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the next pair of the run.
+     *
+     * @return next packed pair, or END if the run is exhausted.
+     * @throws IOException
+     */
+    long next() throws IOException {
+        if (pos == blockSize && !readBlock()) {
+            return END;
+        }
+        return block[pos++];
+    }
+
+    /**
+     * Reads the next block of the run, and maps its pairs.
+     *
+     * @return false if the run is exhausted.
+     */
+    private boolean readBlock() throws IOException {
+        if (nextIndex >= endIndex) {
+            return false;
+        }
+        long blockStart;
+        if (format == IndexWriterOptions.RunFormat.RAW) {
+            blockStart = nextIndex;
+            blockSize = (int) Math.min(block.length, endIndex - nextIndex);
+            read(nextIndex * Long.BYTES, blockSize * Long.BYTES);
+            buffer.asLongBuffer().get(block, 0, blockSize);
+        } else {
+            int last = nextBlock + 1;
+            while (last < numBlocks && blockStarts[last] < endIndex
+                    && (last + 1 - nextBlock) * RunOutput.BLOCK_PAIRS <= block.length
+                    && blockOffsets[last + 1] - blockOffsets[nextBlock] <= buffer.capacity()) {
+                last++;
+            }
+            blockStart = blockStarts[nextBlock];
+            readBlocks(nextBlock, last);
+            blockSize = (int) (Math.min(endIndex, blockStarts[last]) - blockStart);
+            nextBlock = last;
+        }
+        pos = (int) (nextIndex - blockStart);
+        nextIndex = blockStart + blockSize;
+
+        if (termIdMap != null || docIdOffset != 0) {
+            for (int i = pos; i < blockSize; i++) {
+                long pair = block[i];
+                block[i] = ExternalSort.pack(mapTermId(ExternalSort.termId(pair)),
+                        ExternalSort.docId(pair) + docIdOffset);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads and decodes the VBYTE blocks [from, to) into the pairs block, without mapping them.
+     */
+    private void readBlocks(int from, int to) throws IOException {
+        read(blockOffsets[from], (int) (blockOffsets[to] - blockOffsets[from]));
+        int m = 0;
+        for (int b = from; b < to; b++) {
+            int termId = 0, docId = 0;
+            for (long i = blockStarts[b]; i < blockStarts[b + 1]; i++) {
+                int termIdGap = readVByte();
+                termId += termIdGap;
+                docId = termIdGap == 0 ? docId + readVByte() : readVByte();
+                block[m++] = ExternalSort.pack(termId, docId);
+            }
+        }
+        blockSize = m;
+    }
+
+    /**
+     * Reads a variable byte code from the buffer, see RunOutput.
+     */
+    private int readVByte() {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Reads the given number of bytes of the run file at the given offset into the buffer.
+     */
+    private void read(long offset, int length) throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("unexpected end of run");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Returns the final termId of a termId of the run.
+     */
+    private int mapTermId(int termId) {
+        return termIdMap == null ? termId : termIdMap[termId];
+    }
+
+    /**
+     * Closes the run file.
+     *
+     * @throws IOException
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+}
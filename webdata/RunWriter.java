@@ -0,0 +1,252 @@
+package webdata;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RunWriter class.
+ * Hands full (termId, docId) pairs buffers to the ExternalSort. With a single buffer runs are sorted and
+ * written on the calling thread, with more buffers they are sorted and written by a background thread
+ * while the caller fills the next free buffer, blocking only when no buffer is free.
+ * A failure of the background thread is rethrown to the caller by its next call, and abort stops the
+ * thread after a failure of the caller, so a failed build never waits on the other side.
+ */
+class RunWriter {
+
+    /**
+     * A full pairs buffer waiting to be sorted and written.
+     */
+    private static class Run {
+        final long[] pairs;
+        final int n;
+        final TermTable terms;
+        final int group;
+
+        Run(long[] pairs, int n, TermTable terms, int group) {
+            this.pairs = pairs;
+            this.n = n;
+            this.terms = terms;
+            this.group = group;
+        }
+    }
+
+    private static final Run END = new Run(null, 0, null, 0);
+    static final int NUM_BUFFERS = 2;
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final ExternalSort sorter;
+    private final int pairsCapacity;
+    private final BlockingQueue<long[]> freeBuffers;
+    private final BlockingQueue<Run> fullBuffers;
+    private Thread thread = null;
+    private volatile Throwable error = null;
+    private volatile boolean aborted = false;
+    private boolean closed = false;
+
+    private long busyNanos = 0;
+    private long waitNanos = 0;
+
+    /**
+     * RunWriter constructor, splitting the given number of pairs into the number of buffers of the sorter.
+     *
+     * @param sorter     external sorter writing the runs.
+     * @param totalPairs total number of pairs in all buffers.
+     */
+    RunWriter(ExternalSort sorter, int totalPairs) {
+        this(sorter, sorter.getRunBuffers(), totalPairs / sorter.getRunBuffers());
+    }
+
+    /**
+     * RunWriter constructor.
+     *
+     * @param sorter        external sorter writing the runs.
+     * @param numBuffers    number of pairs buffers, 1 writes runs on the calling thread.
+     * @param pairsCapacity number of pairs in each buffer.
+     */
+    RunWriter(ExternalSort sorter, int numBuffers, int pairsCapacity) {
+        this.sorter = sorter;
+        this.pairsCapacity = pairsCapacity;
+        this.freeBuffers = new ArrayBlockingQueue<>(numBuffers);
+        this.fullBuffers = new ArrayBlockingQueue<>(numBuffers);
+        for (int i = 0; i < numBuffers; i++) {
+            freeBuffers.add(new long[pairsCapacity]);
+        }
+        if (numBuffers > 1) {
+            thread = new Thread(this::writeRuns, "RunWriter");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Returns the number of pairs in each buffer.
+     */
+    int getPairsCapacity() {
+        return pairsCapacity;
+    }
+
+    /**
+     * Takes a free pairs buffer, waiting for one if all buffers are being written.
+     *
+     * @return empty pairs buffer.
+     * @throws IOException if writing a previous run failed.
+     */
+    long[] takeBuffer() throws IOException {
+        long start = System.nanoTime();
+        try {
+            long[] buffer;
+            while ((buffer = freeBuffers.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkError();
+            }
+            waitNanos += System.nanoTime() - start;
+            checkError();
+            return buffer;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Writes a full pairs buffer as a sorted run.
+     *
+     * @param pairs pairs buffer.
+     * @param n     number of pairs in buffer.
+     * @param terms provisional termIds snapshot to order the run by, null if the pairs hold termIds.
+     * @param group run group.
+     * @return empty pairs buffer to continue with.
+     * @throws IOException if writing a run failed.
+     */
+    long[] write(long[] pairs, int n, TermTable terms, int group) throws IOException {
+        Run run = new Run(pairs, n, terms, group);
+        if (thread == null) {
+            writeRun(run);
+            return pairs;
+        }
+        try {
+            long start = System.nanoTime();
+            while (!fullBuffers.offer(run, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkError();
+            }
+            waitNanos += System.nanoTime() - start;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        return takeBuffer();
+    }
+
+    /**
+     * Waits until all runs are written, and releases the buffers. Does nothing more once closed.
+     *
+     * @throws IOException if writing a run failed.
+     */
+    void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            stop();
+        }
+        checkError();
+    }
+
+    /**
+     * Stops the background thread without writing the runs still queued, and releases the buffers.
+     * Used when the caller failed, so it does not report errors of its own. Does nothing once closed.
+     */
+    void abort() {
+        aborted = true;
+        if (!closed) {
+            closed = true;
+            try {
+                stop();
+            } catch (IOException e) {
+                // the failure being handled by the caller is the one reported
+            }
+        }
+    }
+
+    /**
+     * Ends the background thread after the runs queued before the end marker, and releases the buffers.
+     */
+    private void stop() throws IOException {
+        if (thread != null) {
+            try {
+                while (thread.isAlive() && !fullBuffers.offer(END, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    // the thread frees a place in the queue with every run it takes
+                }
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+        freeBuffers.clear();
+    }
+
+    /**
+     * Background thread loop, writes full buffers until the end marker is reached.
+     * Every buffer is given back, also when writing it failed or the writer was aborted, so the caller
+     * never waits for a buffer that will not come, and learns of the failure from checkError.
+     */
+    private void writeRuns() {
+        try {
+            Run run;
+            while ((run = fullBuffers.take()) != END) {
+                try {
+                    if (error == null && !aborted) {
+                        writeRun(run);
+                    }
+                } catch (Throwable t) {
+                    error = t;
+                }
+                freeBuffers.put(run.pairs);
+            }
+        } catch (InterruptedException e) {
+            error = new IOException(e);
+        } catch (Throwable t) {
+            error = t;
+        }
+    }
+
+    /**
+     * Sorts and writes one run.
+     */
+    private void writeRun(Run run) throws IOException {
+        long start = System.nanoTime();
+        if (run.terms == null) {
+            sorter.writeSorted(run.pairs, run.n);
+        } else {
+            sorter.writeSortedProvisional(run.pairs, run.n, run.terms, run.group);
+        }
+        busyNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Rethrows the error of a failed run write.
+     */
+    private void checkError() throws IOException {
+        Throwable e = error;
+        if (e != null) {
+            throw Utils.rethrow(e);
+        }
+    }
+
+    /**
+     * Returns the time spent sorting and writing runs, in nanoseconds.
+     */
+    long getBusyNanos() {
+        return busyNanos;
+    }
+
+    /**
+     * Returns the time the caller spent waiting for free buffers, in nanoseconds.
+     */
+    long getWaitNanos() {
+        return waitNanos;
+    }
+}
@@ -0,0 +1,101 @@
+package webdata;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * TermFilter class.
+ * A Bloom filter over the dictionary terms, rejecting most tokens that are not in the dictionary with a
+ * few bit probes instead of a dictionary search. Its size and number of probes are derived from the
+ * false positive rate it is built for. The probes of a term are derived from its two 32 bit hash halves
+ * by double hashing.
+ * The term_filter file holds the number of probes, the number of bits and the bit words.
+ */
+class TermFilter {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final String TERM_FILTER = "/term_filter";
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final ByteBuffer buffer;
+    private final int numProbes;
+    private final long numBits;
+
+    private TermFilter(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.numProbes = buffer.getInt(0);
+        this.numBits = buffer.getLong(Integer.BYTES);
+    }
+
+    /**
+     * Memory maps the term filter of the index in the given directory.
+     *
+     * @param dir index directory.
+     * @return the term filter.
+     * @throws IOException
+     */
+    static TermFilter read(String dir) throws IOException {
+        return new TermFilter(Utils.map(dir + TERM_FILTER));
+    }
+
+    /**
+     * Builds the term filter of the given terms and writes it to the given index directory.
+     *
+     * @param dir               index directory.
+     * @param terms             dictionary terms.
+     * @param falsePositiveRate rate of tokens not in the dictionary that the filter lets through.
+     * @throws IOException
+     */
+    static void write(String dir, String[] terms, double falsePositiveRate) throws IOException {
+        double ln2 = Math.log(2);
+        long numBits = Math.max(Long.SIZE,
+                (long) Math.ceil(-Math.max(1, terms.length) * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        numBits = (numBits + Long.SIZE - 1) / Long.SIZE * Long.SIZE;
+        int numProbes = (int) Math.max(1, Math.round((double) numBits / Math.max(1, terms.length) * ln2));
+
+        long[] words = new long[(int) (numBits / Long.SIZE)];
+        for (String term : terms) {
+            long hash = TermHash.hash(term);
+            for (int i = 0; i < numProbes; i++) {
+                long bit = probe(hash, i, numBits);
+                words[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(dir + TERM_FILTER)))) {
+            output.writeInt(numProbes);
+            output.writeLong(numBits);
+            for (long word : words) {
+                output.writeLong(word);
+            }
+        }
+    }
+
+    /**
+     * Returns false if the token is surely not in the dictionary.
+     *
+     * @param token token.
+     */
+    boolean mightContain(String token) {
+        long hash = TermHash.hash(token);
+        for (int i = 0; i < numProbes; i++) {
+            long bit = probe(hash, i, numBits);
+            long word = buffer.getLong(HEADER_BYTES + (int) (bit >>> 6) * Long.BYTES);
+            if ((word & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long probe(long hash, int i, long numBits) {
+        long combined = (hash & 0xFFFFFFFFL) + i * ((hash >>> 32) | 1);
+        return Long.remainderUnsigned(combined, numBits);
+    }
+}
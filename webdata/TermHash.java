@@ -0,0 +1,205 @@
+package webdata;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * TermHash class.
+ * A minimal perfect hash of the dictionary terms, mapping every term to its termId in constant time.
+ * The terms are hashed into buckets of about BUCKET_SIZE terms, and the buckets, largest first, are each
+ * given the first seed that moves all their terms to free slots, one slot per term (hash and displace).
+ * Every slot holds the termId of its term and a 16 bit fingerprint of the term hash, which rejects
+ * most tokens that are not in the dictionary. Other tokens hash to the slot of some term, so a found
+ * termId must still be checked against its term.
+ * The term_hash file holds the number of terms, the number of buckets, the bucket seeds, the slot
+ * termIds and the slot fingerprints.
+ */
+class TermHash {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final String TERM_HASH = "/term_hash";
+    private static final int BUCKET_SIZE = 4;
+    private static final int MAX_SEED = 1 << 24;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private final ByteBuffer buffer;
+    private final int numTerms;
+    private final int numBuckets;
+    private final int termIdsOffset;
+    private final int fingerprintsOffset;
+
+    private TermHash(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.numTerms = buffer.getInt(0);
+        this.numBuckets = buffer.getInt(Integer.BYTES);
+        this.termIdsOffset = HEADER_BYTES + numBuckets * Integer.BYTES;
+        this.fingerprintsOffset = termIdsOffset + numTerms * Integer.BYTES;
+    }
+
+    /**
+     * Memory maps the term hash of the index in the given directory.
+     *
+     * @param dir index directory.
+     * @return the term hash.
+     * @throws IOException
+     */
+    static TermHash read(String dir) throws IOException {
+        return new TermHash(Utils.map(dir + TERM_HASH));
+    }
+
+    /**
+     * Builds the term hash of the given terms and writes it to the given index directory.
+     *
+     * @param dir   index directory.
+     * @param terms terms ordered by termId.
+     * @return false if no seed separates the terms of some bucket, in which case nothing is written.
+     * @throws IOException
+     */
+    static boolean write(String dir, String[] terms) throws IOException {
+        int n = terms.length;
+        int numBuckets = Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE);
+        long[] hashes = new long[n];
+        int[] bucketStarts = new int[numBuckets + 1];
+        for (int i = 0; i < n; i++) {
+            hashes[i] = hash(terms[i]);
+            bucketStarts[bucket(hashes[i], numBuckets) + 1]++;
+        }
+        int maxBucketSize = 0;
+        for (int b = 0; b < numBuckets; b++) {
+            maxBucketSize = Math.max(maxBucketSize, bucketStarts[b + 1]);
+            bucketStarts[b + 1] += bucketStarts[b];
+        }
+        // termIds grouped by bucket
+        int[] bucketTerms = new int[n];
+        int[] fill = Arrays.copyOf(bucketStarts, numBuckets);
+        for (int i = 0; i < n; i++) {
+            bucketTerms[fill[bucket(hashes[i], numBuckets)]++] = i;
+        }
+        // buckets ordered by decreasing size
+        int[] sizeStarts = new int[maxBucketSize + 2];
+        for (int b = 0; b < numBuckets; b++) {
+            sizeStarts[maxBucketSize - (bucketStarts[b + 1] - bucketStarts[b]) + 1]++;
+        }
+        for (int s = 0; s <= maxBucketSize; s++) {
+            sizeStarts[s + 1] += sizeStarts[s];
+        }
+        int[] order = new int[numBuckets];
+        for (int b = 0; b < numBuckets; b++) {
+            order[sizeStarts[maxBucketSize - (bucketStarts[b + 1] - bucketStarts[b])]++] = b;
+        }
+
+        int[] seeds = new int[numBuckets];
+        int[] slotTermIds = new int[n];
+        Arrays.fill(slotTermIds, -1);
+        int[] slots = new int[maxBucketSize];
+        for (int b : order) {
+            int from = bucketStarts[b], size = bucketStarts[b + 1] - from;
+            if (size == 0) {
+                break;
+            }
+            int seed = 0;
+            while (!place(hashes, bucketTerms, from, size, seed, slotTermIds, slots)) {
+                if (++seed == MAX_SEED) {
+                    return false;
+                }
+            }
+            seeds[b] = seed;
+            for (int i = 0; i < size; i++) {
+                slotTermIds[slots[i]] = bucketTerms[from + i];
+            }
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(dir + TERM_HASH)))) {
+            output.writeInt(n);
+            output.writeInt(numBuckets);
+            for (int seed : seeds) {
+                output.writeInt(seed);
+            }
+            for (int termId : slotTermIds) {
+                output.writeInt(termId);
+            }
+            for (int termId : slotTermIds) {
+                output.writeShort(fingerprint(hashes[termId]));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the free slots of the terms of a bucket for a seed.
+     *
+     * @return false if two terms of the bucket share a slot, or a slot is taken.
+     */
+    private static boolean place(long[] hashes, int[] bucketTerms, int from, int size, int seed,
+                                 int[] slotTermIds, int[] slots) {
+        for (int i = 0; i < size; i++) {
+            int slot = slot(hashes[bucketTerms[from + i]], seed, slotTermIds.length);
+            if (slotTermIds[slot] >= 0) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slot) {
+                    return false;
+                }
+            }
+            slots[i] = slot;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the termId of a token if it may be in the dictionary.
+     *
+     * @param token token.
+     * @return the termId the token hashes to, or -1 if it is not in the dictionary.
+     */
+    int lookup(String token) {
+        if (numTerms == 0) {
+            return -1;
+        }
+        long hash = hash(token);
+        int seed = buffer.getInt(HEADER_BYTES + bucket(hash, numBuckets) * Integer.BYTES);
+        int slot = slot(hash, seed, numTerms);
+        if (buffer.getShort(fingerprintsOffset + slot * Short.BYTES) != fingerprint(hash)) {
+            return -1;
+        }
+        return buffer.getInt(termIdsOffset + slot * Integer.BYTES);
+    }
+
+    /**
+     * FNV-1a over the chars of the term, finished with the MurmurHash3 mixer. Also used by TermFilter.
+     */
+    static long hash(String term) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < term.length(); i++) {
+            h = (h ^ term.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static int bucket(long hash, int numBuckets) {
+        return (int) (((hash >>> 32) * numBuckets) >>> 32);
+    }
+
+    private static int slot(long hash, int seed, int n) {
+        return (int) (((mix(hash + seed * GOLDEN_GAMMA) >>> 32) * n) >>> 32);
+    }
+
+    private static short fingerprint(long hash) {
+        return (short) hash;
+    }
+}
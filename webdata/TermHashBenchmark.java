@@ -0,0 +1,43 @@
+package webdata;
+
+import java.io.IOException;
+
+/**
+ * TermHashBenchmark class.
+ * Builds an index of the given reviews file with and without a term hash, both without a term filter,
+ * and times the lookups of every term of the input, and of as many missing tokens, through the term hash
+ * against the binary search of the dictionary. It also reports the size of the term hash file.
+ * Usage: java webdata.TermHashBenchmark inputFile [repetitions]
+ */
+class TermHashBenchmark {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final String TERM_HASH = "/term_hash";
+
+    public static void main(String[] args) throws IOException {
+        String inputFile = args[0];
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        String[] terms = BenchmarkInput.readTerms(inputFile);
+        String[] missing = BenchmarkInput.missingTerms(terms);
+
+        for (boolean termHash : new boolean[]{false, true}) {
+            IndexWriterOptions options = new IndexWriterOptions();
+            options.setTermHash(termHash);
+            options.setTermFilterFalsePositiveRate(0);
+            String dir = BenchmarkInput.buildIndex(inputFile, options);
+            try {
+                IndexReader reader = new IndexReader(dir);
+                BenchmarkInput.lookupNanos(reader, terms, repetitions);   // warm up
+                System.out.printf("%-13s %,d terms: hit %.0f ns/lookup, miss %.0f ns/lookup, term hash %,d bytes%n",
+                        termHash ? "term hash" : "binary search", terms.length,
+                        BenchmarkInput.lookupNanos(reader, terms, repetitions),
+                        BenchmarkInput.lookupNanos(reader, missing, repetitions),
+                        BenchmarkInput.fileSize(dir, TERM_HASH));
+            } finally {
+                new IndexWriter().removeIndex(dir);
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package webdata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * TermTable class.
+ * An open addressing hash table from byte sequences to term ids. Term ids are assigned in first-seen order,
+ * term bytes are kept in a single growing byte arena so adding and looking up terms creates no objects.
+ */
+class TermTable {
+
+    /**
+     * ---- CONSTANTS ----
+     **/
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final int INITIAL_ARENA_SIZE = 1 << 20;
+    private static final int EMPTY = -1;
+
+    /**
+     * ---- FIELDS ----
+     **/
+    private byte[] arena = new byte[INITIAL_ARENA_SIZE];
+    private int arenaSize = 0;
+    private int[] offsets = new int[INITIAL_CAPACITY + 1];  // term i is arena[offsets[i], offsets[i + 1])
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] slots;
+    private int mask;
+    private int size = 0;
+
+    /**
+     * TermTable constructor.
+     */
+    TermTable() {
+        slots = new int[INITIAL_CAPACITY * 2];
+        Arrays.fill(slots, EMPTY);
+        mask = slots.length - 1;
+    }
+
+    /**
+     * TermTable constructor for a read only snapshot of another table's terms.
+     */
+    private TermTable(byte[] arena, int[] offsets, int size) {
+        this.arena = arena;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    /**
+     * Returns a read only snapshot of the terms added so far, supporting sortedIds and getTerm.
+     * Terms are only ever appended, so the snapshot can be used by another thread while terms
+     * are still being added to this table, once it is safely handed over to that thread.
+     *
+     * @return terms snapshot.
+     */
+    TermTable snapshot() {
+        return new TermTable(arena, offsets, size);
+    }
+
+    /**
+     * Returns the hash code of the given byte sequence.
+     */
+    private static int hash(byte[] buf, int off, int len) {
+        int h = 0;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + buf[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns true if term id equals the given byte sequence.
+     */
+    private boolean equals(int id, byte[] buf, int off, int len) {
+        int start = offsets[id];
+        if (offsets[id + 1] - start != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (arena[start + i] != buf[off + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the slot of the given byte sequence, or the empty slot it should be inserted to.
+     */
+    private int slotOf(int h, byte[] buf, int off, int len) {
+        int slot = h & mask;
+        while (slots[slot] != EMPTY) {
+            int id = slots[slot];
+            if (hashes[id] == h && equals(id, buf, off, len)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the term id of the given byte sequence, adding it to the table if it is new.
+     *
+     * @param buf bytes buffer.
+     * @param off term offset in buffer.
+     * @param len term length.
+     * @return term id.
+     */
+    int add(byte[] buf, int off, int len) {
+        int h = hash(buf, off, len);
+        int slot = slotOf(h, buf, off, len);
+        if (slots[slot] != EMPTY) {
+            return slots[slot];
+        }
+
+        if (size + 1 >= hashes.length) {
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            offsets = Arrays.copyOf(offsets, hashes.length + 1);
+        }
+        if (arenaSize + len > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + len));
+        }
+        System.arraycopy(buf, off, arena, arenaSize, len);
+        arenaSize += len;
+
+        int id = size++;
+        hashes[id] = h;
+        offsets[id + 1] = arenaSize;
+        slots[slot] = id;
+
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Returns the term id of the given byte sequence, -1 if it is not in the table.
+     *
+     * @param buf bytes buffer.
+     * @param off term offset in buffer.
+     * @param len term length.
+     * @return term id.
+     */
+    int find(byte[] buf, int off, int len) {
+        int h = hash(buf, off, len);
+        return slots[slotOf(h, buf, off, len)];
+    }
+
+    /**
+     * Adds all terms of another table.
+     *
+     * @param other terms table.
+     * @return map from the other table's term ids to this table's term ids.
+     */
+    int[] addAll(TermTable other) {
+        int[] ids = new int[other.size];
+        for (int id = 0; id < other.size; id++) {
+            int start = other.offsets[id];
+            ids[id] = add(other.arena, start, other.offsets[id + 1] - start);
+        }
+        return ids;
+    }
+
+    /**
+     * Doubles the slots array and reinserts all term ids.
+     */
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, EMPTY);
+        mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    /**
+     * Compares two terms by their bytes, shorter prefix first.
+     */
+    private int compare(int id1, int id2) {
+        int start1 = offsets[id1], len1 = offsets[id1 + 1] - start1;
+        int start2 = offsets[id2], len2 = offsets[id2 + 1] - start2;
+        int n = Math.min(len1, len2);
+        for (int i = 0; i < n; i++) {
+            int res = (arena[start1 + i] & 0xff) - (arena[start2 + i] & 0xff);
+            if (res != 0) {
+                return res;
+            }
+        }
+        return len1 - len2;
+    }
+
+    /**
+     * Returns all term ids ordered lexicographically by their terms.
+     *
+     * @return sorted term ids.
+     */
+    int[] sortedIds() {
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = i;
+        }
+        mergeSort(ids, new int[size], 0, size);
+        return ids;
+    }
+
+    /**
+     * Sorts ids[from, to) by their terms, using tmp as scratch space.
+     */
+    private void mergeSort(int[] ids, int[] tmp, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(ids, tmp, from, mid);
+        mergeSort(ids, tmp, mid, to);
+        if (compare(ids[mid - 1], ids[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(ids, from, tmp, from, to - from);
+        int i = from, j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && compare(tmp[i], tmp[j]) <= 0)) {
+                ids[k] = tmp[i++];
+            } else {
+                ids[k] = tmp[j++];
+            }
+        }
+    }
+
+    /**
+     * Returns the term with the given id.
+     */
+    String getTerm(int id) {
+        return new String(arena, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns the number of terms in the table.
+     */
+    int size() {
+        return size;
+    }
+}
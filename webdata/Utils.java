@@ -2,10 +2,11 @@ package webdata;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 
 /**
  * Utils.
@@ -20,17 +21,32 @@ class Utils {
     }
 
     /**
-     * Converts Array list of bytes to to an array bytes.
+     * Memory maps a file for reading.
      *
-     * @param bytes Array list of bytes.
-     * @return array of bytes.
+     * @param path file path.
+     * @return the mapped file contents.
+     * @throws IOException
+     */
+    static MappedByteBuffer map(String path) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(path, "r").getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Rethrows an unchecked throwable, and returns any other throwable as an IOException to throw.
+     *
+     * @param t throwable, such as the cause of a failed task.
+     * @return t, or an IOException caused by it.
      */
-    static byte[] convertToArray(ArrayList<Byte> bytes) {
-        byte[] bytesArr = new byte[bytes.size()];
-        for (int i = 0; i < bytesArr.length; ++i) {
-            bytesArr[i] = bytes.get(i);
+    static IOException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
         }
-        return bytesArr;
+        return t instanceof IOException ? (IOException) t : new IOException(t);
     }
 
     /**
@@ -0,0 +1,56 @@
+package webdata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * VByteCodec class.
+ * Writes the gaps and then the frequencies of a block as variable byte codes, 7 bits in each byte with
+ * the high bit set on all bytes but the last.
+ */
+class VByteCodec implements PostingsCodec {
+
+    private final byte[] buffer = new byte[2 * BLOCK_SIZE * 5];
+
+    @Override
+    public void encodeBlock(int[] gaps, int[] freqs, int n, OutputStream out) throws IOException {
+        int pos = 0;
+        for (int i = 0; i < n; i++) {
+            pos = writeVByte(gaps[i], pos);
+        }
+        for (int i = 0; i < n; i++) {
+            pos = writeVByte(freqs[i], pos);
+        }
+        out.write(buffer, 0, pos);
+    }
+
+    private int writeVByte(int value, int pos) {
+        while ((value & ~0x7F) != 0) {
+            buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    @Override
+    public int decodeBlock(byte[] bytes, int offset, int n, int[] gaps, int[] freqs) {
+        int pos = offset;
+        for (int j = 0; j < 2 * n; j++) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[pos++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            if (j < n) {
+                gaps[j] = value;
+            } else {
+                freqs[j - n] = value;
+            }
+        }
+        return pos;
+    }
+}